@@ -0,0 +1,34 @@
+package edu.gatech.seclass.moditext;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the benchmarks whose names match the arguments (all of them without
+// arguments) with the GC profiler, so the results show the allocation rate
+// (gc.alloc.rate.norm, bytes per call) next to ops/s and MB/s.
+//
+// The benchmarks need jmh-core and jmh-generator-annprocess on the class
+// path, with the annotation processor enabled, and the moditext classes:
+//   javac -cp moditext-classes:jmh-core.jar:jmh-generator-annprocess.jar -d bench-classes bench/**/*.java
+//   java -cp moditext-classes:bench-classes:jmh-core.jar:jopt-simple.jar:commons-math3.jar \
+//        edu.gatech.seclass.moditext.BenchmarkMain [regexp...]
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder builder = new OptionsBuilder();
+        if (args.length == 0) {
+            builder.include("edu\\.gatech\\.seclass\\.moditext\\..*Benchmarks");
+        }
+        for (String pattern : args) {
+            builder.include(pattern);
+        }
+        Options options = builder.addProfiler(GCProfiler.class).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,68 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+// Deterministic synthetic input for the benchmarks. The same parameters and
+// seed always give the same text, so runs can be compared with each other.
+final class Corpus {
+
+    // The substring the benchmarks keep and format
+    static final String NEEDLE = "needle";
+
+    private static final String ASCII = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 .,;:-_";
+    private static final String UNICODE = "\u00e9\u00e8\u00fc\u00f1\u00df\u03b1\u03b2\u0436\u4e2d\u6587\u20ac";
+
+    private final int lines;
+    private final int lineLength;
+    private final boolean unicode;
+    private final double density;
+    private final long seed;
+
+    // density is the share of lines that contain NEEDLE
+    Corpus(int lines, int lineLength, boolean unicode, double density, long seed) {
+        this.lines = lines;
+        this.lineLength = lineLength;
+        this.unicode = unicode;
+        this.density = density;
+        this.seed = seed;
+    }
+
+    // The whole text, ending with a line separator like the files moditext accepts
+    String text() {
+        StringBuilder text = new StringBuilder(lines * (lineLength + 2));
+        Random random = new Random(seed);
+        String separator = System.lineSeparator();
+        for (int i = 0; i < lines; i++) {
+            // Lengths vary around lineLength so -p and -t both have work to do
+            int length = 1 + random.nextInt(2 * lineLength);
+            int needleAt = random.nextDouble() < density ? random.nextInt(length) : -1;
+            for (int j = 0; j < length; j++) {
+                if (j == needleAt) {
+                    text.append(NEEDLE);
+                }
+                // About one char in eight is non-ASCII in the Unicode corpus
+                if (unicode && random.nextInt(8) == 0) {
+                    text.append(UNICODE.charAt(random.nextInt(UNICODE.length())));
+                } else {
+                    text.append(ASCII.charAt(random.nextInt(ASCII.length())));
+                }
+            }
+            text.append(separator);
+        }
+        return text.toString();
+    }
+
+    // Write the text to a new .txt file in directory
+    Path write(Path directory) throws IOException {
+        Path file = Files.createTempFile(directory, "corpus", ".txt");
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(text());
+        }
+        return file;
+    }
+}
@@ -0,0 +1,79 @@
+package edu.gatech.seclass.moditext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// One benchmark per option, on the public String methods of Main that work
+// on the whole content at once
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OptionBenchmarks {
+
+    @Param({"10000", "200000"})
+    public int lines;
+
+    @Param({"40", "200"})
+    public int lineLength;
+
+    @Param({"false", "true"})
+    public boolean unicode;
+
+    @Param({"0.01", "0.5"})
+    public double density;
+
+    private String content;
+    private long bytes;
+
+    @Setup
+    public void setUp() {
+        content = new Corpus(lines, lineLength, unicode, density, 42).text();
+        bytes = content.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    @Benchmark
+    public void keepLines(Blackhole hole, Throughput throughput) {
+        hole.consume(Main.keepLines(content, Corpus.NEEDLE));
+        throughput.add(bytes);
+    }
+
+    @Benchmark
+    public void padBeginning(Blackhole hole, Throughput throughput) {
+        hole.consume(Main.padBeginning(content, '*', lineLength));
+        throughput.add(bytes);
+    }
+
+    @Benchmark
+    public void trimLines(Blackhole hole, Throughput throughput) {
+        hole.consume(Main.trimLines(content, lineLength / 2));
+        throughput.add(bytes);
+    }
+
+    @Benchmark
+    public void formatText(Blackhole hole, Throughput throughput) {
+        hole.consume(Main.formatText(content, "bold", Corpus.NEEDLE, true));
+        throughput.add(bytes);
+    }
+
+    @Benchmark
+    public void reverseLines(Blackhole hole, Throughput throughput) {
+        hole.consume(Main.reverseLines(content));
+        throughput.add(bytes);
+    }
+}
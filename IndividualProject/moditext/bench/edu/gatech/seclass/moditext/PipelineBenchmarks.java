@@ -0,0 +1,104 @@
+package edu.gatech.seclass.moditext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Single options and realistic combinations through the streaming engine,
+// and the same through Main.main with its argument checks
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmarks {
+
+    @Param({
+        "-k needle",
+        "-p * 80",
+        "-t 40",
+        "-f bold needle",
+        "-g -f code e",
+        "-r",
+        "-k needle -t 40 -f bold e -g -r",
+        "-k needle -p # 100 -f italic needle",
+        "-t 20 -g -f bold a"
+    })
+    public String options;
+
+    @Param({"10000", "200000"})
+    public int lines;
+
+    @Param({"80"})
+    public int lineLength;
+
+    @Param({"false", "true"})
+    public boolean unicode;
+
+    @Param({"0.1"})
+    public double density;
+
+    private Path directory;
+    private Path file;
+    private long bytes;
+    private ModiText job;
+    private String[] args;
+    private PrintStream stdout;
+    private final WritableByteChannel discard = Channels.newChannel(OutputStream.nullOutputStream());
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("moditext-bench");
+        file = new Corpus(lines, lineLength, unicode, density, 42).write(directory);
+        bytes = Files.size(file);
+        List<String> optionList = Arrays.asList(options.split(" "));
+        job = ModiText.compile(optionList);
+        args = optionList.toArray(new String[optionList.size() + 1]);
+        args[args.length - 1] = file.toString();
+        // Main.main prints to System.out, which would otherwise end up in the JMH log
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        System.setOut(stdout);
+        Files.delete(file);
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public ModiText.Status engine(Throughput throughput) throws IOException {
+        ModiText.Status status = job.process(file, discard);
+        throughput.add(bytes);
+        return status;
+    }
+
+    @Benchmark
+    public boolean main(Throughput throughput) {
+        Main.main(args);
+        throughput.add(bytes);
+        return Main.errorStat;
+    }
+}
@@ -0,0 +1,25 @@
+package edu.gatech.seclass.moditext;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Counts the input megabytes each benchmark call goes through, so JMH
+// reports MB/s next to ops/s
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+
+    public double megabytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        megabytes = 0;
+    }
+
+    void add(long bytes) {
+        megabytes += bytes / 1e6;
+    }
+}
@@ -0,0 +1,115 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+// Runs the pipeline on the raw UTF-8 bytes. ASCII lines are kept, padded,
+// trimmed and formatted as bytes and written out without ever becoming
+// Strings. Any other line is decoded and goes through the String path, so
+// multibyte text still gives the same output.
+class AsciiRunner {
+
+    private static final String ASCII_CHARS;
+
+    static {
+        StringBuilder chars = new StringBuilder();
+        for (char c = 0; c < 0x80; c++) {
+            chars.append(c);
+        }
+        ASCII_CHARS = chars.toString();
+    }
+
+    private final Pipeline pipeline;
+    private final byte[] separator;
+    private final int separatorChars;
+
+    AsciiRunner(Pipeline pipeline, String separator) {
+        this.pipeline = pipeline;
+        this.separator = separator.getBytes(StandardCharsets.UTF_8);
+        this.separatorChars = separator.length();
+    }
+
+    // The ASCII bytes can only be copied to the output if it encodes ASCII the same way
+    static boolean supports(Pipeline pipeline, Charset output) {
+        return pipeline.supportsAscii()
+                && Arrays.equals(ASCII_CHARS.getBytes(output), ASCII_CHARS.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // Same as Pipeline.run over the bytes of the input, returns false if the output has to be empty
+    boolean run(InputStream in, LineWriter out) throws IOException {
+        return run(in, out, new Stats());
+    }
+
+    // Same, counting into stats
+    boolean run(InputStream in, LineWriter out, Stats stats) throws IOException {
+        return run(in, out, stats, () -> true);
+    }
+
+    // Same, where complete tells at the end whether the input is valid
+    boolean run(InputStream in, LineWriter out, Stats stats, BooleanSupplier complete) throws IOException {
+        Pipeline.Pass pass = pipeline.new Pass(out, stats, complete);
+        ByteLine stage = new ByteLine();
+        ByteLine result = new ByteLine();
+        StringBuilder charStage = new StringBuilder();
+        StringBuilder charResult = new StringBuilder();
+        byte[] buffer = new byte[64 * 1024];
+        int lineStart = 0;
+        int position = 0;
+        int limit = 0;
+        boolean eof = false;
+        long charsRead = 0;
+        while (true) {
+            int found = indexOfSeparator(buffer, position, limit);
+            if (found >= 0) {
+                charsRead += line(buffer, lineStart, found, pass, stage, result, charStage, charResult, stats) + separatorChars;
+                lineStart = found + separator.length;
+                position = lineStart;
+            } else if (eof) {
+                // Text after the last separator
+                charsRead += line(buffer, lineStart, limit, pass, stage, result, charStage, charResult, stats);
+                break;
+            } else {
+                // Keep the unfinished line and read more behind it
+                position = Math.max(lineStart, limit - separator.length + 1) - lineStart;
+                System.arraycopy(buffer, lineStart, buffer, 0, limit - lineStart);
+                limit -= lineStart;
+                lineStart = 0;
+                if (limit == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                }
+                int read = in.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    limit += read;
+                }
+            }
+        }
+        return pass.finish(charsRead);
+    }
+
+    // Hand one line to the pass, returns its length in chars
+    private int line(byte[] buffer, int from, int to, Pipeline.Pass pass,
+                     ByteLine stage, ByteLine result, StringBuilder charStage, StringBuilder charResult,
+                     Stats stats) throws IOException {
+        if (from == to) {
+            pass.empty(1);
+            return 0;
+        }
+        if (ByteScan.isAscii(buffer, from, to)) {
+            pass.lineAscii(pipeline.applyAscii(buffer, from, to, stage, result, stats) ? result : null);
+            return to - from;
+        }
+        String line = new String(buffer, from, to - from, StandardCharsets.UTF_8);
+        pass.line(pipeline.apply(line, charStage, charResult, stats));
+        return line.length();
+    }
+
+    private int indexOfSeparator(byte[] buffer, int from, int limit) {
+        return ByteScan.indexOf(buffer, from, limit, separator);
+    }
+}
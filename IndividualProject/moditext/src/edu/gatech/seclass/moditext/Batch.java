@@ -0,0 +1,278 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Batch mode: one set of options applied to many files in one JVM.
+//
+// Usage: Batch [-o DIR] [-j N] [OPTIONS] -- PATH...
+//
+// A PATH is a .txt or .txt.gz file, a directory (every such file below it)
+// or a glob such as logs/**/*.txt. Without -o the results are written to
+// stdout one file after the other, in the order of the paths. With -o every
+// file gets its own plain text output under DIR, named by its path below the
+// directory or glob it was found with, or by its file name. Two files that
+// would get the same output are an error. Of the options that name where the
+// result goes only -i is taken, to edit every file in place, and --stats and
+// --follow are not taken at all. At most N files are in flight at once.
+public final class Batch {
+
+    private static final String BATCH_USAGE = "Usage: moditext-batch [-o DIR] [-j N] [OPTIONS] -- PATH...";
+
+    private final ModiText job;
+    private final Path outputDirectory;
+    private final int inFlight;
+
+    Batch(ModiText job, Path outputDirectory, int inFlight) {
+        this.job = job;
+        this.outputDirectory = outputDirectory;
+        this.inFlight = inFlight;
+    }
+
+    // Exits with status 1 when any file ended with an error
+    public static void main(String[] args) {
+        if (!run(Arrays.asList(args), System.out, System.err)) {
+            System.exit(1);
+        }
+    }
+
+    // Parse the arguments and run the batch, returns false if anything ended with a usage message
+    static boolean run(List<String> args, PrintStream out, PrintStream err) {
+        int split = args.indexOf("--");
+        if (split < 0 || split == args.size() - 1) {
+            err.println(BATCH_USAGE);
+            return false;
+        }
+        Path outputDirectory = null;
+        int inFlight = 4 * Runtime.getRuntime().availableProcessors();
+        int i = 0;
+        try {
+            for (; i + 1 < split; i += 2) {
+                if (args.get(i).equals("-o")) {
+                    outputDirectory = Paths.get(args.get(i + 1));
+                } else if (args.get(i).equals("-j")) {
+                    inFlight = Integer.parseInt(args.get(i + 1));
+                } else {
+                    break;
+                }
+            }
+            if (inFlight < 1) {
+                throw new IllegalArgumentException("Invalid -j " + inFlight);
+            }
+            ModiText job = ModiText.compile(args.subList(i, split));
+            if (job.writesOutputFile()) {
+                // Every file would overwrite the one before, each file gets its own output with -o DIR
+                err.println("moditext-batch: -o FILE is not a batch option, use -o DIR before the options");
+                return false;
+            }
+            if (job.reportsStats() || job.follows()) {
+                // Neither has a meaning for many files at once
+                err.println("moditext-batch: --stats and --follow are not batch options");
+                return false;
+            }
+            List<Input> files = expand(args.subList(split + 1, args.size()));
+            String clash = outputDirectory == null || job.writesFile() ? null : clash(files);
+            if (clash != null) {
+                err.println(clash);
+                return false;
+            }
+            return new Batch(job, outputDirectory, inFlight).process(files, out, err);
+        } catch (IllegalArgumentException | IOException e) {
+            err.println(Main.USAGE);
+            return false;
+        }
+    }
+
+    // One file of the batch, name is where its output goes under -o
+    static final class Input {
+        final Path file;
+        final Path name;
+
+        Input(Path file, Path name) {
+            this.file = file;
+            this.name = name;
+        }
+    }
+
+    // The text files named by the paths, directories and globs, in order
+    static List<Input> expand(List<String> paths) throws IOException {
+        List<Input> files = new ArrayList<>();
+        for (String path : paths) {
+            int glob = firstGlobChar(path);
+            if (glob >= 0) {
+                // Walk from the directory part in front of the first glob character
+                int slash = path.lastIndexOf('/', glob);
+                Path base = Paths.get(slash < 0 ? "" : path.substring(0, slash + 1));
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + path);
+                files.addAll(walk(base, matcher));
+            } else if (Files.isDirectory(Paths.get(path))) {
+                files.addAll(walk(Paths.get(path), file -> ModiText.isInputName(file.toString())));
+            } else {
+                files.add(new Input(Paths.get(path), Paths.get(path).getFileName()));
+            }
+        }
+        return files;
+    }
+
+    // Where the output of a file goes under -o, relative to DIR
+    private static Path outputName(Input input) {
+        String name = input.name.normalize().toString();
+        return Paths.get(name.endsWith(".gz") ? name.substring(0, name.length() - 3) : name);
+    }
+
+    // Two different files that would write the same output file under -o, as an error message, or null
+    static String clash(List<Input> files) {
+        Map<Path, Path> writers = new HashMap<>();
+        for (Input input : files) {
+            Path file = input.file.toAbsolutePath().normalize();
+            Path other = writers.putIfAbsent(outputName(input), file);
+            if (other != null && !other.equals(file)) {
+                return "moditext-batch: " + other + " and " + file + " both write " + outputName(input);
+            }
+        }
+        return null;
+    }
+
+    // Files below base are named by their path relative to it
+    private static List<Input> walk(Path base, PathMatcher matcher) throws IOException {
+        try (Stream<Path> walk = Files.walk(base)) {
+            return walk.filter(Files::isRegularFile).filter(matcher::matches).sorted()
+                    .map(file -> new Input(file, base.relativize(file)))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static int firstGlobChar(String path) {
+        for (int i = 0; i < path.length(); i++) {
+            if ("*?[{".indexOf(path.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Run every file as its own task, writing the results in order
+    boolean process(List<Input> files, PrintStream out, PrintStream err) throws IOException {
+        ExecutorService executor = newExecutor(inFlight);
+        boolean ok = true;
+        try {
+            // Results are reported in the order of the files, reported is the next one
+            Deque<Future<Result>> pending = new ArrayDeque<>();
+            int reported = 0;
+            for (Input file : files) {
+                if (pending.size() == inFlight) {
+                    ok &= report(files.get(reported++), pending.removeFirst(), out, err);
+                }
+                pending.addLast(executor.submit(() -> processOne(file)));
+            }
+            while (!pending.isEmpty()) {
+                ok &= report(files.get(reported++), pending.removeFirst(), out, err);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        out.flush();
+        return ok;
+    }
+
+    // The result of one file, output is null when it went to its own file
+    private static final class Result {
+        final ModiText.Status status;
+        final ByteArrayOutputStream output;
+
+        Result(ModiText.Status status, ByteArrayOutputStream output) {
+            this.status = status;
+            this.output = output;
+        }
+    }
+
+    private Result processOne(Input input) throws IOException {
+        Path file = input.file;
+        if (!ModiText.isInputName(file.toString())) {
+            return new Result(ModiText.Status.INVALID_INPUT, null);
+        }
+        if (job.writesFile()) {
+            // -i edits every file in place
+            return new Result(job.process(file), null);
+        }
+        if (outputDirectory == null) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            return new Result(job.process(file, output), output);
+        }
+        Path target = outputDirectory.resolve(outputName(input)).toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        // The output is only put in place once the file went through, a failed
+        // file leaves whatever was at target untouched. The temporary file is
+        // created like target would be, so it ends up with the same permissions.
+        Path temp = target.resolveSibling("." + target.getFileName() + "."
+                + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+        try {
+            ModiText.Status status;
+            try (FileChannel output = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                status = job.process(file, output);
+            }
+            if (status != ModiText.Status.INVALID_INPUT) {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return new Result(status, null);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Write out one file's result, a failure is reported under the file's path
+    private static boolean report(Input input, Future<Result> future, PrintStream out, PrintStream err)
+            throws IOException {
+        Result result;
+        try {
+            result = future.get();
+        } catch (ExecutionException e) {
+            // A file that cannot be read, with what went wrong
+            err.println(input.file + ": " + e.getCause());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        if (result.status == ModiText.Status.INVALID_INPUT) {
+            err.println(input.file + ": " + Main.USAGE);
+            return false;
+        }
+        if (result.output != null) {
+            result.output.writeTo(out);
+        }
+        return true;
+    }
+
+    // Virtual threads where the runtime has them, otherwise one platform thread per file in flight
+    static ExecutorService newExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+}
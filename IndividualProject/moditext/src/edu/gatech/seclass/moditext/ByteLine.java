@@ -0,0 +1,37 @@
+package edu.gatech.seclass.moditext;
+
+import java.util.Arrays;
+
+// A reusable, growable line of bytes for the byte-level ASCII path
+final class ByteLine {
+
+    byte[] bytes = new byte[256];
+    int length = 0;
+
+    void clear() {
+        length = 0;
+    }
+
+    void append(byte[] source, int from, int to) {
+        ensure(to - from);
+        System.arraycopy(source, from, bytes, length, to - from);
+        length += to - from;
+    }
+
+    void append(byte[] source) {
+        append(source, 0, source.length);
+    }
+
+    // Append count copies of b
+    void fill(byte b, int count) {
+        ensure(count);
+        Arrays.fill(bytes, length, length + count, b);
+        length += count;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(length + extra, 2 * bytes.length));
+        }
+    }
+}
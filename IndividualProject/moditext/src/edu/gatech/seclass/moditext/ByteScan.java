@@ -0,0 +1,115 @@
+package edu.gatech.seclass.moditext;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Byte searches that look at eight bytes at a time: each step loads a long
+// and finds the bytes equal to the one searched for with a few word
+// operations (SWAR, SIMD within a register), instead of comparing byte by
+// byte. The bytes left over at the end go through the plain loop.
+//
+// For a word x, (x - 0x01..01) & ~x & 0x80..80 has the high bit set in the
+// zero bytes of x. Bytes above a zero byte can be flagged as well through the
+// borrow, but the lowest flag is always a real zero, which is all a search
+// for the first match needs.
+final class ByteScan {
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle BUFFER_LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private ByteScan() {
+    }
+
+    // First index of b in bytes from from to to, or -1
+    static int indexOf(byte[] bytes, int from, int to, byte b) {
+        long pattern = (b & 0xffL) * ONES;
+        int i = from;
+        for (; i <= to - Long.BYTES; i += Long.BYTES) {
+            long word = (long) LONGS.get(bytes, i) ^ pattern;
+            long found = (word - ONES) & ~word & HIGHS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // First index of pattern in bytes from from to to, or -1. Candidates are
+    // found on the first byte of the pattern and then checked in full.
+    static int indexOf(byte[] bytes, int from, int to, byte[] pattern) {
+        int last = to - pattern.length;
+        for (int i = from; i <= last; i++) {
+            i = indexOf(bytes, i, last + 1, pattern[0]);
+            if (i < 0) {
+                return -1;
+            }
+            int matched = 1;
+            while (matched < pattern.length && bytes[i + matched] == pattern[matched]) {
+                matched++;
+            }
+            if (matched == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Same over the absolute positions of a buffer, for mapped files
+    static int indexOf(ByteBuffer bytes, int from, int to, byte b) {
+        long pattern = (b & 0xffL) * ONES;
+        int i = from;
+        for (; i <= to - Long.BYTES; i += Long.BYTES) {
+            long word = (long) BUFFER_LONGS.get(bytes, i) ^ pattern;
+            long found = (word - ONES) & ~word & HIGHS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (bytes.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static int indexOf(ByteBuffer bytes, int from, int to, byte[] pattern) {
+        int last = to - pattern.length;
+        for (int i = from; i <= last; i++) {
+            i = indexOf(bytes, i, last + 1, pattern[0]);
+            if (i < 0) {
+                return -1;
+            }
+            int matched = 1;
+            while (matched < pattern.length && bytes.get(i + matched) == pattern[matched]) {
+                matched++;
+            }
+            if (matched == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Whether every byte from from to to is below 0x80
+    static boolean isAscii(byte[] bytes, int from, int to) {
+        int i = from;
+        long high = 0;
+        for (; i <= to - Long.BYTES; i += Long.BYTES) {
+            high |= (long) LONGS.get(bytes, i);
+        }
+        for (; i < to; i++) {
+            high |= bytes[i];
+        }
+        return (high & HIGHS) == 0;
+    }
+}
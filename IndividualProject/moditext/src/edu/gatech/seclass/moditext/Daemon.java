@@ -0,0 +1,210 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Keeps one JVM running and serves moditext jobs over a Unix domain socket,
+// so small files do not pay for JVM startup on every call. Each connection
+// is one job with its own Job state, several can run at once.
+//
+// Request:  working directory, argument count, arguments (all as length + UTF-8),
+//           then stdin up to the end of the client's output
+// Response: frames of tag, length, bytes for stdout and stderr, then an END
+//           frame whose one byte is 1 if the job ended with the usage message
+//           or an error
+public final class Daemon implements AutoCloseable {
+
+    static final int END = 0;
+    static final int STDOUT = 1;
+    static final int STDERR = 2;
+
+    private final Path socket;
+    private final ServerSocketChannel server;
+    private final ExecutorService workers;
+
+    Daemon(Path socket, int threads) throws IOException {
+        this.socket = socket;
+        removeStale(socket);
+        this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        this.server.bind(UnixDomainSocketAddress.of(socket));
+        this.workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "moditext-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // A socket left behind by a daemon that was killed would make bind fail, so it is removed.
+    // Anything else at the path, or the socket of a daemon that still answers, is left alone.
+    private static void removeStale(Path socket) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(socket, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        if (!attributes.isOther()) {
+            throw new IOException(socket + " exists and is not a socket");
+        }
+        try (SocketChannel probe = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            probe.connect(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            // Nobody listens on it any more
+            Files.delete(socket);
+            return;
+        }
+        throw new IOException("A daemon is already serving " + socket);
+    }
+
+    // Usage: Daemon SOCKET
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: moditext-daemon SOCKET");
+            return;
+        }
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        Daemon daemon;
+        try {
+            daemon = new Daemon(Paths.get(args[0]), threads);
+        } catch (IOException e) {
+            System.err.println("moditext-daemon: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::close));
+        daemon.serve();
+    }
+
+    // Accept connections until the daemon is closed
+    void serve() throws IOException {
+        while (server.isOpen()) {
+            SocketChannel client;
+            try {
+                client = server.accept();
+            } catch (IOException e) {
+                if (!server.isOpen()) {
+                    return;
+                }
+                throw e;
+            }
+            workers.execute(() -> handle(client));
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (SocketChannel channel = client) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream frames = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            Path directory = Paths.get(readString(in));
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = readString(in);
+            }
+
+            Charset charset = Charset.defaultCharset();
+            PrintStream out = new PrintStream(new FrameOutputStream(frames, STDOUT), false, charset);
+            PrintStream err = new PrintStream(new FrameOutputStream(frames, STDERR), false, charset);
+            // Whatever the client sends after the arguments is the job's stdin
+            Job job = new Job(in, out, err, directory);
+            // Anything that stops the job short ends it with the error status
+            boolean failed = true;
+            try {
+                job.run(args);
+                failed = job.errorStat;
+            } catch (RuntimeException e) {
+                err.println("moditext: " + e);
+            } finally {
+                // The client waits for the END frame, so it is sent whatever happened
+                out.flush();
+                err.flush();
+                synchronized (frames) {
+                    frames.writeByte(END);
+                    frames.writeInt(1);
+                    frames.writeByte(failed ? 1 : 0);
+                    frames.flush();
+                }
+            }
+        } catch (IOException e) {
+            // The client went away, nothing is left to report to
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.close();
+            Files.deleteIfExists(socket);
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        workers.shutdown();
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Each write becomes one frame with the stream's tag
+    private static final class FrameOutputStream extends OutputStream {
+
+        private final DataOutputStream frames;
+        private final int tag;
+
+        FrameOutputStream(DataOutputStream frames, int tag) {
+            this.frames = frames;
+            this.tag = tag;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (frames) {
+                frames.writeByte(tag);
+                frames.writeInt(len);
+                frames.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (frames) {
+                frames.flush();
+            }
+        }
+    }
+}
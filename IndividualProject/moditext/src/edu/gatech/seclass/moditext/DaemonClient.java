@@ -0,0 +1,96 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Thin client for Daemon: sends the arguments and the working directory,
+// and stdin when the file is -, then copies the job's stdout and stderr back.
+public final class DaemonClient {
+
+    private DaemonClient() {
+    }
+
+    // Usage: DaemonClient SOCKET [moditext arguments] FILE
+    // Exits with status 1 when the job ended with the usage message or an error
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: moditext-client SOCKET [ARGS] FILE");
+            System.exit(1);
+        }
+        String[] jobArgs = new String[args.length - 1];
+        System.arraycopy(args, 1, jobArgs, 0, jobArgs.length);
+        if (run(Paths.get(args[0]), jobArgs, System.out, System.err)) {
+            System.exit(1);
+        }
+    }
+
+    // Run one job on the daemon, returns true if it ended with the usage message or an error
+    static boolean run(Path socket, String[] args, PrintStream out, PrintStream err) throws IOException {
+        return run(socket, args, System.in, out, err);
+    }
+
+    // Same, with in as the job's stdin when the file is -
+    static boolean run(Path socket, String[] args, InputStream in, PrintStream out, PrintStream err) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            Daemon.writeString(request, Paths.get("").toAbsolutePath().toString());
+            request.writeInt(args.length);
+            for (String arg : args) {
+                Daemon.writeString(request, arg);
+            }
+            request.flush();
+            if (args.length > 0 && args[args.length - 1].equals("-")) {
+                pipeStdin(in, channel);
+            } else {
+                channel.shutdownOutput();
+            }
+
+            DataInputStream frames = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            while (true) {
+                int tag = frames.readUnsignedByte();
+                byte[] bytes = new byte[frames.readInt()];
+                frames.readFully(bytes);
+                if (tag == Daemon.END) {
+                    out.flush();
+                    err.flush();
+                    return bytes[0] != 0;
+                }
+                (tag == Daemon.STDOUT ? out : err).write(bytes);
+            }
+        }
+    }
+
+    // Send stdin on its own thread while the output is read, so neither side waits on the other.
+    // The channel is written to directly, a stream over it would hold its lock during reads.
+    private static void pipeStdin(InputStream in, SocketChannel channel) {
+        Thread pipe = new Thread(() -> {
+            byte[] buffer = new byte[64 * 1024];
+            try {
+                for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                    ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                }
+                channel.shutdownOutput();
+            } catch (IOException e) {
+                // The job ended before reading all of stdin
+            }
+        }, "moditext-stdin");
+        pipe.setDaemon(true);
+        pipe.start();
+    }
+}
@@ -0,0 +1,115 @@
+package edu.gatech.seclass.moditext;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// Java Flight Recorder events for the moditext stages. They are all disabled
+// unless a recording turns them on (for example with a .jfc file enabling
+// moditext.*), and each use site checks shouldCommit() before filling in any
+// fields, so with no recording the events cost nothing.
+final class Events {
+
+    private Events() {
+    }
+
+    @Name("moditext.Compile")
+    @Label("Compile Options")
+    @Category("moditext")
+    @Description("Checking and compiling the options into a job")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Compile extends Event {
+        @Label("Options")
+        String options;
+
+        @Label("Valid")
+        boolean valid;
+    }
+
+    @Name("moditext.Read")
+    @Label("Read Input")
+    @Category("moditext")
+    @Description("One buffer, block or window read from the input")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Read extends Event {
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("moditext.Stage")
+    @Label("Transform Stage")
+    @Category("moditext")
+    @Description("One option over a whole run, the time is sampled on one line in 64")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Stage extends Event {
+        @Label("Option")
+        String option;
+
+        @Label("Lines In")
+        long linesIn;
+
+        @Label("Lines Out")
+        long linesOut;
+
+        @Label("Lines Changed")
+        @Description("Lines dropped by -k, padded by -p or truncated by -t, or substrings wrapped by -f")
+        long changed;
+
+        @Label("Estimated Time")
+        @Timespan
+        long estimatedTime;
+    }
+
+    @Name("moditext.Flush")
+    @Label("Flush Output")
+    @Category("moditext")
+    @Description("One buffer of output written to the channel")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Flush extends Event {
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Lines")
+        long lines;
+    }
+
+    @Name("moditext.Process")
+    @Label("Process Input")
+    @Category("moditext")
+    @Description("One call of a compiled job on a file or stream")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Process extends Event {
+        @Label("Input")
+        String input;
+
+        @Label("Status")
+        String status;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+
+        @Label("Lines In")
+        long linesIn;
+
+        @Label("Lines Out")
+        long linesOut;
+    }
+}
@@ -0,0 +1,149 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// --follow: runs the options over a file that is still being written, like
+// tail -F. The complete lines already in the file are processed first, then
+// each line appended after it, as soon as its separator is written. Only the
+// bytes past the last position read are ever read, and a line written in
+// pieces is held until it is complete.
+//
+// Appends are noticed through a WatchService on the directory, with a poll
+// as well for file systems that do not report changes. A file that got
+// shorter was truncated, and one with a new file key was rotated; either way
+// it is read again from its start as a new input.
+final class Follower {
+
+    static final long POLL_MILLIS = 1000;
+
+    private final Pipeline pipeline;
+    private final Path file;
+    private final byte[] separator;
+    private final OutputStream output;
+    private final LineWriter out;
+    private final Stats stats;
+    private final long pollMillis;
+    private final StringBuilder stage = new StringBuilder();
+    private final StringBuilder result = new StringBuilder();
+    private Pipeline.Pass pass;
+    private byte[] buffer = new byte[64 * 1024];
+    // Bytes at the start of buffer that are not a complete line yet
+    private int pending = 0;
+    // Bytes of the file read so far, and the file they were read from
+    private long position = 0;
+    private Object fileKey;
+
+    Follower(Pipeline pipeline, Path file, String separator, OutputStream output, Stats stats, long pollMillis) {
+        this.pipeline = pipeline;
+        this.file = file;
+        this.separator = separator.getBytes(StandardCharsets.UTF_8);
+        this.output = output;
+        this.out = new LineWriter(Channels.newChannel(output), Charset.defaultCharset(), separator);
+        this.stats = stats;
+        this.pollMillis = pollMillis;
+        this.pass = pipeline.new Pass(out, stats);
+    }
+
+    // Follow the file until the thread is interrupted
+    void run() throws IOException, InterruptedException {
+        if (!Files.exists(file)) {
+            throw new NoSuchFileException(file.toString());
+        }
+        Path directory = file.toAbsolutePath().getParent();
+        try (WatchService watcher = directory.getFileSystem().newWatchService()) {
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            while (true) {
+                readAppended();
+                // Any change in the directory is worth a look, the next read sorts out what it was
+                WatchKey key = watcher.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        }
+    }
+
+    // Process the lines appended since the last call, and write them out
+    void readAppended() throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            // Rotated away, the new file has not been created yet
+            return;
+        }
+        Object key = attributes.fileKey();
+        if (attributes.size() < position || (fileKey != null && !fileKey.equals(key))) {
+            restart();
+        }
+        fileKey = key;
+        if (attributes.size() == position) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(position);
+            while (true) {
+                if (pending == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                }
+                int read = channel.read(ByteBuffer.wrap(buffer, pending, buffer.length - pending));
+                if (read <= 0) {
+                    break;
+                }
+                position += read;
+                stats.bytesRead += read;
+                lines(read);
+            }
+        }
+        out.flush();
+        output.flush();
+    }
+
+    // The file was truncated or replaced, its content is a new input
+    private void restart() {
+        position = 0;
+        pending = 0;
+        pass = pipeline.new Pass(out, stats);
+    }
+
+    // Process the complete lines in the buffer after read more bytes, keeping the rest pending
+    private void lines(int read) throws IOException {
+        int end = pending + read;
+        int lineStart = 0;
+        // A separator may have started in the bytes that were already pending
+        int from = Math.max(0, pending - separator.length + 1);
+        for (int i; (i = ByteScan.indexOf(buffer, from, end, separator)) >= 0; ) {
+            line(lineStart, i);
+            lineStart = i + separator.length;
+            from = lineStart;
+        }
+        System.arraycopy(buffer, lineStart, buffer, 0, end - lineStart);
+        pending = end - lineStart;
+    }
+
+    private void line(int from, int to) throws IOException {
+        if (from == to) {
+            pass.empty(1);
+        } else {
+            pass.line(pipeline.apply(new String(buffer, from, to - from, StandardCharsets.UTF_8), stage, result, stats));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+// Reads lines from last to first where a LineIndex says they are, so no byte
+// is looked at twice to find a separator. The pieces are those of
+// content.split(separator, -1) in reverse order, for the content from the
+// start of line first up to limit, where limit is either the end of the file
+// or the start of line last.
+class IndexedReverseReader implements LineSource {
+
+    private final FileChannel channel;
+    private final LineIndex index;
+    private final int separatorLength;
+    private final int separatorChars;
+    private final int first;
+    private final int last;
+    private final long limit;
+    private final int blockSize;
+    // The next piece to return, counting down to first
+    private int line;
+    // buffer holds the file bytes from bufferStart to bufferEnd
+    private byte[] buffer;
+    private long bufferStart = 0;
+    private long bufferEnd = 0;
+    private long charsRead = 0;
+    private long readNanos = 0;
+
+    IndexedReverseReader(FileChannel channel, LineIndex index, String separator, int first, int last, long limit) {
+        this(channel, index, separator, first, last, limit, ReverseLineReader.BLOCK_SIZE);
+    }
+
+    IndexedReverseReader(FileChannel channel, LineIndex index, String separator, int first, int last, long limit,
+                         int blockSize) {
+        this.channel = channel;
+        this.index = index;
+        this.separatorLength = separator.getBytes(StandardCharsets.UTF_8).length;
+        this.separatorChars = separator.length();
+        this.first = first;
+        this.last = last;
+        this.limit = limit;
+        this.blockSize = blockSize;
+        this.line = last;
+        this.buffer = new byte[blockSize];
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        if (line < first) {
+            return null;
+        }
+        long start = index.start(line);
+        // The last piece runs to limit, the others to their separator
+        boolean tail = line == last;
+        long end = tail ? limit : index.start(line + 1) - separatorLength;
+        if (start < bufferStart || end > bufferEnd) {
+            read(start, end);
+        }
+        String result = new String(buffer, (int) (start - bufferStart), (int) (end - start), StandardCharsets.UTF_8);
+        charsRead += result.length() + (tail ? 0 : separatorChars);
+        line--;
+        return result;
+    }
+
+    @Override
+    public long charsRead() {
+        return charsRead;
+    }
+
+    // Time spent reading blocks
+    long readNanos() {
+        return readNanos;
+    }
+
+    // Read a block that ends at end and reaches back to start, and further while it is below blockSize
+    private void read(long start, long end) throws IOException {
+        long from = Math.min(start, Math.max(index.start(first), end - blockSize));
+        int length = (int) (end - from);
+        if (length > buffer.length) {
+            buffer = new byte[length];
+        }
+        Events.Read event = new Events.Read();
+        event.begin();
+        long started = System.nanoTime();
+        ByteBuffer target = ByteBuffer.wrap(buffer, 0, length);
+        while (target.hasRemaining()) {
+            if (channel.read(target, from + target.position()) < 0) {
+                throw new IOException("File changed while it was read");
+            }
+        }
+        readNanos += System.nanoTime() - started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.bytes = length;
+            event.commit();
+        }
+        bufferStart = from;
+        bufferEnd = end;
+    }
+}
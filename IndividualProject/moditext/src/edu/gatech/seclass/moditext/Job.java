@@ -0,0 +1,110 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+// One invocation of moditext with its own output streams and flags, so
+// several can run at the same time in one JVM
+final class Job {
+
+    private final InputStream in;
+    private final PrintStream out;
+    private final PrintStream err;
+    // Relative paths in the arguments are resolved against this directory
+    private final Path directory;
+    boolean errorStat = false;
+    boolean emptyOutput = false;
+
+    Job(InputStream in, PrintStream out, PrintStream err) {
+        this(in, out, err, Paths.get(""));
+    }
+
+    Job(InputStream in, PrintStream out, PrintStream err, Path directory) {
+        this.in = in;
+        this.out = out;
+        this.err = err;
+        this.directory = directory;
+    }
+
+    // Run one invocation, the flags say how it ended
+    void run(String[] args) {
+        // Read arguments
+        List<String> arguments = Arrays.asList(args);
+
+        // Check if no arguments, or if no file added, - reads from stdin
+        String name = arguments.isEmpty() ? "" : arguments.get(arguments.size() - 1);
+        if (!ModiText.isInputName(name) && !name.equals("-")) {
+            usage();
+            return;
+        }
+
+        // Check the options for errors, then the file, and process it one line at a time
+        try {
+            ModiText job = ModiText.compile(arguments.subList(0, arguments.size() - 1), directory);
+            if (job.follows()) {
+                follow(job, name);
+                return;
+            }
+            Stats stats = new Stats();
+            ModiText.Status status;
+            if (name.equals("-")) {
+                status = job.writesFile() ? job.process(in, stats) : job.process(in, out, stats);
+            } else {
+                Path file = directory.resolve(name);
+                status = job.writesFile() ? job.process(file, stats) : job.process(file, out, stats);
+            }
+            if (job.reportsStats() && status != ModiText.Status.INVALID_INPUT) {
+                reportStats(stats, job.statsFile());
+            }
+            switch (status) {
+                case INVALID_INPUT:
+                    usage();
+                    break;
+                case EMPTY:
+                    emptyOutput = true;
+                    break;
+                default:
+                    break;
+            }
+        } catch (IllegalArgumentException | IllegalStateException | IOException e) {
+            // Invalid options, an input the options cannot take, file not found
+            // or other IO exceptions. Anything else is a bug and goes to the caller.
+            usage();
+        }
+    }
+
+    // --follow runs until it is interrupted, stdin cannot be followed
+    private void follow(ModiText job, String name) throws IOException {
+        if (name.equals("-")) {
+            usage();
+            return;
+        }
+        try {
+            job.follow(directory.resolve(name), out);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --stats goes to stderr, or as JSON to the --stats=FILE file
+    private void reportStats(Stats stats, Path file) throws IOException {
+        if (file == null) {
+            err.print(stats);
+            err.flush();
+        } else {
+            Files.writeString(file, stats.toJson() + System.lineSeparator());
+        }
+    }
+
+    // Print usage information and set errorStat to true
+    private void usage() {
+        errorStat = true;
+        err.println(Main.USAGE);
+    }
+}
@@ -0,0 +1,201 @@
+package edu.gatech.seclass.moditext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+// The -k/-K substrings. A single substring uses String.contains, several are
+// compiled into an Aho-Corasick automaton that scans each line once, however
+// many substrings there are.
+final class KeepFilter {
+
+    private final List<String> substrings;
+    private final String single;
+    // The bytes of single if it is ASCII, null otherwise
+    private final byte[] singleAscii;
+    private final int shortest;
+    private final boolean matchesEmpty;
+
+    // Automaton, node 0 is the root. Transitions live in an open-addressing
+    // table keyed by node and char.
+    private long[] keys;
+    private int[] targets;
+    private int[] fail;
+    private boolean[] accepts;
+
+    private KeepFilter(List<String> substrings) {
+        int min = Integer.MAX_VALUE;
+        boolean empty = false;
+        for (String substring : substrings) {
+            min = Math.min(min, substring.length());
+            empty |= substring.isEmpty();
+        }
+        this.substrings = substrings;
+        this.shortest = min;
+        this.matchesEmpty = empty;
+        this.single = substrings.size() == 1 ? substrings.get(0) : null;
+        this.singleAscii = single != null && LiteralFormatter.isAscii(single)
+                ? single.getBytes(StandardCharsets.US_ASCII) : null;
+        if (single == null) {
+            build(substrings);
+        }
+    }
+
+    // Keep lines containing any of the substrings, there has to be at least one
+    static KeepFilter of(List<String> substrings) {
+        if (substrings.isEmpty()) {
+            throw new IllegalArgumentException("No substring to keep");
+        }
+        return new KeepFilter(substrings);
+    }
+
+    // Check if the line contains any of the substrings
+    boolean matches(String line) {
+        if (single != null) {
+            return line.contains(single);
+        }
+        if (matchesEmpty) {
+            return true;
+        }
+        int state = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            int next = target(state, c);
+            while (next < 0 && state != 0) {
+                state = fail[state];
+                next = target(state, c);
+            }
+            state = next < 0 ? 0 : next;
+            if (accepts[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Same as matches for a line of ASCII bytes, which are also its chars
+    boolean matchesAscii(byte[] line, int from, int to) {
+        if (matchesEmpty) {
+            return true;
+        }
+        if (single != null) {
+            // A substring with other chars can never be found in ASCII bytes
+            return singleAscii != null && ByteScan.indexOf(line, from, to, singleAscii) >= 0;
+        }
+        int state = 0;
+        for (int i = from; i < to; i++) {
+            char c = (char) line[i];
+            int next = target(state, c);
+            while (next < 0 && state != 0) {
+                state = fail[state];
+                next = target(state, c);
+            }
+            state = next < 0 ? 0 : next;
+            if (accepts[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // An empty substring keeps empty lines too
+    List<String> substrings() {
+        return substrings;
+    }
+
+    boolean matchesEmpty() {
+        return matchesEmpty;
+    }
+
+    // Length of the shortest substring, a file with fewer chars cannot match
+    int shortest() {
+        return shortest;
+    }
+
+    private void build(List<String> substrings) {
+        int capacity = 1;
+        for (String substring : substrings) {
+            capacity += substring.length();
+        }
+        int slots = Integer.highestOneBit(Math.max(2, 2 * capacity - 1)) << 1;
+        keys = new long[slots];
+        Arrays.fill(keys, -1);
+        targets = new int[slots];
+        fail = new int[capacity];
+        accepts = new boolean[capacity];
+        // Children of each node as a linked list, only needed while building
+        int[] firstChild = new int[capacity];
+        int[] nextSibling = new int[capacity];
+        char[] label = new char[capacity];
+        int nodes = 1;
+
+        // Trie of the substrings
+        for (String substring : substrings) {
+            int state = 0;
+            for (int i = 0; i < substring.length(); i++) {
+                char c = substring.charAt(i);
+                int next = target(state, c);
+                if (next < 0) {
+                    next = nodes++;
+                    put(state, c, next);
+                    label[next] = c;
+                    nextSibling[next] = firstChild[state];
+                    firstChild[state] = next;
+                }
+                state = next;
+            }
+            accepts[state] = true;
+        }
+
+        // Failure links in breadth-first order, a node accepts if its fallback does
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child = firstChild[0]; child != 0; child = nextSibling[child]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int child = firstChild[state]; child != 0; child = nextSibling[child]) {
+                int fallback = fail[state];
+                int next = target(fallback, label[child]);
+                while (next < 0 && fallback != 0) {
+                    fallback = fail[fallback];
+                    next = target(fallback, label[child]);
+                }
+                fail[child] = next < 0 ? 0 : next;
+                accepts[child] |= accepts[fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    private int target(int state, char c) {
+        long key = ((long) state << 16) | c;
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return targets[slot];
+            }
+            if (keys[slot] < 0) {
+                return -1;
+            }
+        }
+    }
+
+    private void put(int state, char c, int next) {
+        long key = ((long) state << 16) | c;
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] >= 0) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        targets[slot] = next;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,113 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// Where every line of a file starts, so lines can be found without looking
+// for separators: starts[i] is the offset of line i, and starts[lines()] is
+// just past the last separator, where the piece after it starts.
+//
+// The index is kept next to the file as FILE.idx and built again when the
+// file's size, modification time or the separator no longer match. On disk
+// the starts are the gaps between them as varints, which is about one or two
+// bytes per line instead of eight.
+final class LineIndex implements Sidecar.Content {
+
+    private static final Sidecar SIDECAR = new Sidecar(".idx", 0x4d544958, 1);
+
+    private final long[] starts;
+
+    private LineIndex(long[] starts) {
+        this.starts = starts;
+    }
+
+    // The index of file, read from its sidecar or built and saved there
+    static LineIndex open(Path file, FileChannel channel, String separator) throws IOException {
+        return SIDECAR.open(file, channel, separator, LineIndex::readFrom, () -> build(channel, separator));
+    }
+
+    static Path sidecar(Path file) {
+        return SIDECAR.path(file);
+    }
+
+    // Find every separator in the file
+    static LineIndex build(FileChannel channel, String separator) throws IOException {
+        byte[] separatorBytes = separator.getBytes(StandardCharsets.UTF_8);
+        long[] starts = new long[1024];
+        int count = 1;
+        int matched = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long size = channel.size();
+        for (long position = 0; position < size; ) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < read; i++) {
+                if (matched == 0) {
+                    // Skip to the next byte that can start a separator
+                    i = ByteScan.indexOf(bytes, i, read, separatorBytes[0]);
+                    if (i < 0) {
+                        break;
+                    }
+                }
+                byte b = bytes[i];
+                if (b != separatorBytes[matched]) {
+                    matched = b == separatorBytes[0] ? 1 : 0;
+                } else {
+                    matched++;
+                }
+                if (matched == separatorBytes.length) {
+                    matched = 0;
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, 2 * count);
+                    }
+                    starts[count++] = position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return new LineIndex(Arrays.copyOf(starts, count));
+    }
+
+    // Number of lines, that is of separators
+    int lines() {
+        return starts.length - 1;
+    }
+
+    // Offset where line starts, start(lines()) is just past the last separator
+    long start(int line) {
+        return starts[line];
+    }
+
+    // The first line that starts at or after offset, lines() if none does
+    int lineAtOrAfter(long offset) {
+        int found = Arrays.binarySearch(starts, offset);
+        return Math.min(found >= 0 ? found : -found - 1, lines());
+    }
+
+    // The starts as gaps, after the sidecar header
+    private static LineIndex readFrom(DataInputStream in) throws IOException {
+        long[] starts = new long[in.readInt()];
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] = starts[i - 1] + Sidecar.readVarint(in);
+        }
+        return new LineIndex(starts);
+    }
+
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(starts.length);
+        for (int i = 1; i < starts.length; i++) {
+            Sidecar.writeVarint(out, starts[i] - starts[i - 1]);
+        }
+    }
+}
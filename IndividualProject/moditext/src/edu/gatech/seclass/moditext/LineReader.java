@@ -0,0 +1,63 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.IOException;
+import java.io.Reader;
+
+// Reads the input one line at a time from a Reader, splitting on the exact separator.
+class LineReader implements LineSource {
+
+    private final Reader in;
+    private final char[] separator;
+    private final char[] buffer = new char[8192];
+    private final StringBuilder line = new StringBuilder();
+    private int position = 0;
+    private int limit = 0;
+    private boolean finished = false;
+    private long charsRead = 0;
+
+    LineReader(Reader in, String separator) {
+        this.in = in;
+        this.separator = separator.toCharArray();
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        if (finished) {
+            return null;
+        }
+        line.setLength(0);
+        int matched = 0;
+        while (true) {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit < 0) {
+                    limit = 0;
+                    finished = true;
+                    line.append(separator, 0, matched);
+                    return line.toString();
+                }
+                charsRead += limit;
+            }
+            char c = buffer[position++];
+            if (c == separator[matched]) {
+                matched++;
+                if (matched == separator.length) {
+                    return line.toString();
+                }
+            } else if (matched > 0) {
+                // Partial separator was ordinary text, look at this char again
+                line.append(separator, 0, matched);
+                matched = 0;
+                position--;
+            } else {
+                line.append(c);
+            }
+        }
+    }
+
+    @Override
+    public long charsRead() {
+        return charsRead;
+    }
+}
@@ -0,0 +1,78 @@
+package edu.gatech.seclass.moditext;
+
+import java.util.Arrays;
+
+// The lines of a text as offsets into it, cut the way text.split(separator)
+// cuts it but without a String per line. Line i runs from bounds[2 * i] to
+// bounds[2 * i + 1], so keeping, trimming and reversing lines only moves
+// offsets around and the chars are copied once, into the result. Only the
+// String helpers of Main use it, the command line streams through Pipeline.
+final class LineSlices {
+
+    private final String text;
+    private final int[] bounds;
+    private final int size;
+
+    private LineSlices(String text, int[] bounds, int size) {
+        this.text = text;
+        this.bounds = bounds;
+        this.size = size;
+    }
+
+    // Same lines as text.split(separator) for a line separator, which has no
+    // regex metachars and is found with String.indexOf, a vector search once
+    // the JIT compiles it
+    static LineSlices of(String text, String separator) {
+        int[] bounds = new int[16];
+        int size = 0;
+        int index = 0;
+        for (int found = text.indexOf(separator); found >= 0; found = text.indexOf(separator, index)) {
+            bounds = add(bounds, size++, index, found);
+            index = found + separator.length();
+        }
+        if (size == 0) {
+            // No separator, the whole text is one line
+            return new LineSlices(text, new int[] {0, text.length()}, 1);
+        }
+        bounds = add(bounds, size++, index, text.length());
+        // Trailing empty lines are dropped, the way split does
+        while (size > 0 && bounds[2 * size - 2] == bounds[2 * size - 1]) {
+            size--;
+        }
+        return new LineSlices(text, bounds, size);
+    }
+
+    private static int[] add(int[] bounds, int line, int start, int end) {
+        if (2 * line + 2 > bounds.length) {
+            bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+        }
+        bounds[2 * line] = start;
+        bounds[2 * line + 1] = end;
+        return bounds;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int start(int line) {
+        return bounds[2 * line];
+    }
+
+    int end(int line) {
+        return bounds[2 * line + 1];
+    }
+
+    int length(int line) {
+        return end(line) - start(line);
+    }
+
+    // Append the first length chars of the line to out
+    StringBuilder appendTo(StringBuilder out, int line, int length) {
+        return out.append(text, start(line), start(line) + length);
+    }
+
+    StringBuilder appendTo(StringBuilder out, int line) {
+        return out.append(text, start(line), end(line));
+    }
+}
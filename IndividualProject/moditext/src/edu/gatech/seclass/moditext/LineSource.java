@@ -0,0 +1,15 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.IOException;
+
+// Where the pipeline gets its lines from. The pieces match
+// content.split(separator, -1), so the last piece is the (usually empty)
+// text after the final separator.
+interface LineSource {
+
+    // Return the next line, or null once every piece has been returned
+    String readLine() throws IOException;
+
+    // Number of chars read so far, the same as content.length() at the end
+    long charsRead();
+}
@@ -0,0 +1,135 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+// Writes the lines as soon as they arrive. The output is the same as
+// System.out.println(String.join(separator, lines)) with the same charset.
+//
+// Lines are encoded straight into one direct buffer that is drained to the
+// channel whenever it fills up, so nothing is built up in memory and the
+// channel sees a few large writes instead of one per line.
+class LineWriter {
+
+    static final int BUFFER_SIZE = 256 * 1024;
+
+    private final WritableByteChannel out;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer buffer;
+    private final byte[] separator;
+    // Lines are copied into chars to be encoded, so no buffer is made per line
+    private CharBuffer chars = CharBuffer.allocate(256);
+    private boolean written = false;
+    private long lines = 0;
+    private long bytesWritten = 0;
+    private long writeNanos = 0;
+    private long linesFlushed = 0;
+
+    LineWriter(WritableByteChannel out, Charset charset, String separator) {
+        this(out, charset, separator, BUFFER_SIZE);
+    }
+
+    LineWriter(WritableByteChannel out, Charset charset, String separator, int bufferSize) {
+        this.out = out;
+        // The same replacements String.getBytes makes
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.separator = separator.getBytes(charset);
+    }
+
+    void write(CharSequence line) throws IOException {
+        int length = line.length();
+        if (length > chars.capacity()) {
+            chars = CharBuffer.allocate(Math.max(length, 2 * chars.capacity()));
+        }
+        chars.clear();
+        if (line instanceof String) {
+            ((String) line).getChars(0, length, chars.array(), 0);
+        } else if (line instanceof StringBuilder) {
+            ((StringBuilder) line).getChars(0, length, chars.array(), 0);
+        } else {
+            chars.append(line);
+        }
+        chars.limit(length).position(0);
+        encoder.reset();
+        while (encoder.encode(chars, buffer, true) == CoderResult.OVERFLOW) {
+            drain();
+        }
+        while (encoder.flush(buffer) == CoderResult.OVERFLOW) {
+            drain();
+        }
+        put(separator, 0, separator.length);
+        written = true;
+        lines++;
+    }
+
+    // A line that is already encoded, for ASCII lines that were never decoded
+    void write(byte[] line, int from, int to) throws IOException {
+        put(line, from, to - from);
+        put(separator, 0, separator.length);
+        written = true;
+        lines++;
+    }
+
+    // No lines still prints the empty line that println would
+    void finish() throws IOException {
+        if (!written) {
+            put(separator, 0, separator.length);
+        }
+        drain();
+    }
+
+    // Write out what is buffered, for output that has to show up before the end
+    void flush() throws IOException {
+        if (buffer.position() > 0) {
+            drain();
+        }
+    }
+
+    // Add the lines, bytes and time written so far to stats
+    void addTo(Stats stats) {
+        stats.linesOut += lines;
+        stats.bytesWritten += bytesWritten;
+        stats.writeNanos += writeNanos;
+    }
+
+    private void put(byte[] bytes, int offset, int length) throws IOException {
+        while (length > buffer.remaining()) {
+            int part = buffer.remaining();
+            buffer.put(bytes, offset, part);
+            offset += part;
+            length -= part;
+            drain();
+        }
+        buffer.put(bytes, offset, length);
+    }
+
+    private void drain() throws IOException {
+        Events.Flush event = new Events.Flush();
+        event.begin();
+        long start = System.nanoTime();
+        buffer.flip();
+        int bytes = buffer.remaining();
+        bytesWritten += bytes;
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+        writeNanos += System.nanoTime() - start;
+        event.end();
+        if (event.shouldCommit()) {
+            event.bytes = bytes;
+            event.lines = lines - linesFlushed;
+            event.commit();
+        }
+        linesFlushed = lines;
+    }
+}
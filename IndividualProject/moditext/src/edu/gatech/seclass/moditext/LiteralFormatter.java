@@ -0,0 +1,134 @@
+package edu.gatech.seclass.moditext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// -f without regular expressions: finds the substring with Boyer-Moore-Horspool
+// and wraps the first (or with -g every) occurrence in the style's markers.
+final class LiteralFormatter {
+
+    private final char[] needle;
+    private final String open;
+    private final String close;
+    // The same in bytes for ASCII lines, needleBytes is null if the substring is not ASCII
+    private final byte[] needleBytes;
+    private final byte[] openBytes;
+    private final byte[] closeBytes;
+    private final boolean global;
+    // How far to move when the char under the last position of the needle does
+    // not complete a match, indexed by the low byte of that char
+    private final int[] shift = new int[256];
+
+    LiteralFormatter(String style, String substring, boolean global) {
+        if (substring.isEmpty()) {
+            throw new IllegalArgumentException("Empty substring");
+        }
+        String styled = Main.styleText(style, substring);
+        if (styled == null) {
+            throw new IllegalArgumentException("Unknown style " + style);
+        }
+        int marker = (styled.length() - substring.length()) / 2;
+        this.needle = substring.toCharArray();
+        this.open = styled.substring(0, marker);
+        this.close = styled.substring(styled.length() - marker);
+        this.global = global;
+        this.needleBytes = isAscii(substring) ? substring.getBytes(StandardCharsets.US_ASCII) : null;
+        this.openBytes = open.getBytes(StandardCharsets.US_ASCII);
+        this.closeBytes = close.getBytes(StandardCharsets.US_ASCII);
+
+        // Chars sharing a low byte get the smallest shift of them, which is still safe
+        int last = needle.length - 1;
+        Arrays.fill(shift, needle.length);
+        for (int j = 0; j < last; j++) {
+            shift[needle[j] & 0xFF] = last - j;
+        }
+    }
+
+    // Append the chars of text from from to to to out with the substring wrapped, returns the number wrapped
+    int appendTo(CharSequence text, int from, int to, StringBuilder out) {
+        int replacements = 0;
+        int start = from;
+        int found = indexOf(text, from, to);
+        while (found >= 0) {
+            out.append(text, start, found).append(open).append(needle).append(close);
+            start = found + needle.length;
+            found = global ? indexOf(text, start, to) : -1;
+            replacements++;
+        }
+        out.append(text, start, to);
+        return replacements;
+    }
+
+    // Append a line of ASCII bytes to out with the substring wrapped, returns the number wrapped
+    int appendAscii(byte[] line, int from, int to, ByteLine out) {
+        int replacements = 0;
+        int start = from;
+        int found = needleBytes == null ? -1 : indexOfAscii(line, from, to);
+        while (found >= 0) {
+            out.append(line, start, found);
+            out.append(openBytes);
+            out.append(needleBytes);
+            out.append(closeBytes);
+            start = found + needleBytes.length;
+            found = global ? indexOfAscii(line, start, to) : -1;
+            replacements++;
+        }
+        out.append(line, start, to);
+        return replacements;
+    }
+
+    // First occurrence of the needle from from to to, or -1
+    private int indexOf(CharSequence text, int from, int to) {
+        int last = needle.length - 1;
+        char lastChar = needle[last];
+        for (int i = from; i + last < to; ) {
+            char c = text.charAt(i + last);
+            if (c == lastChar && matchesAt(text, i)) {
+                return i;
+            }
+            i += shift[c & 0xFF];
+        }
+        return -1;
+    }
+
+    // Same search over ASCII bytes, where every byte is its own char
+    private int indexOfAscii(byte[] line, int from, int to) {
+        int last = needleBytes.length - 1;
+        byte lastByte = needleBytes[last];
+        for (int i = from; i + last < to; ) {
+            byte b = line[i + last];
+            if (b == lastByte && matchesAt(line, i)) {
+                return i;
+            }
+            i += shift[b & 0xFF];
+        }
+        return -1;
+    }
+
+    private boolean matchesAt(byte[] line, int start) {
+        for (int j = needleBytes.length - 2; j >= 0; j--) {
+            if (line[start + j] != needleBytes[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matchesAt(CharSequence text, int start) {
+        for (int j = needle.length - 2; j >= 0; j--) {
+            if (text.charAt(start + j) != needle[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
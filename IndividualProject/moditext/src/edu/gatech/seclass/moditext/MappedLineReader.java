@@ -0,0 +1,122 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+// Reads lines straight out of a memory-mapped file, so large inputs are never
+// copied onto the heap as a whole. The file is mapped one window at a time,
+// which also covers files larger than a single 2 GB mapping.
+// UTF-8 never uses the separator bytes inside a multibyte char, so lines can
+// be found on the bytes and only each line is decoded.
+class MappedLineReader implements LineSource {
+
+    // Files larger than this are mapped instead of read through a stream
+    static final long THRESHOLD = 16L << 20;
+    static final int WINDOW_SIZE = 1 << 30;
+
+    private final FileChannel channel;
+    private final long end;
+    private final byte[] separator;
+    private final int separatorChars;
+    private final int windowSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+    private byte[] bytes = new byte[256];
+    private boolean finished = false;
+    private long charsRead = 0;
+    private long readNanos = 0;
+
+    MappedLineReader(FileChannel channel, String separator) throws IOException {
+        this(channel, separator, WINDOW_SIZE);
+    }
+
+    MappedLineReader(FileChannel channel, String separator, int windowSize) throws IOException {
+        this(channel, separator, 0, channel.size(), windowSize);
+    }
+
+    // Read only the bytes from start to end, as if they were the whole file
+    MappedLineReader(FileChannel channel, String separator, long start, long end, int windowSize) throws IOException {
+        this.channel = channel;
+        this.end = end;
+        this.separator = separator.getBytes(StandardCharsets.UTF_8);
+        this.separatorChars = separator.length();
+        this.windowSize = windowSize;
+        this.position = start;
+        map(start, windowSize);
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        if (finished) {
+            return null;
+        }
+        int length = windowSize;
+        while (true) {
+            int start = (int) (position - windowStart);
+            int found = indexOfSeparator(start);
+            if (found >= 0) {
+                String line = decode(start, found - start);
+                position += found - start + separator.length;
+                charsRead += line.length() + separatorChars;
+                return line;
+            }
+            if (windowStart + window.limit() == end) {
+                // Text after the last separator
+                finished = true;
+                String line = decode(start, window.limit() - start);
+                position = end;
+                charsRead += line.length();
+                return line;
+            }
+            // The line runs past the window, slide it to start at this line
+            if (start == 0) {
+                if (length == Integer.MAX_VALUE) {
+                    throw new IOException("Line is longer than " + Integer.MAX_VALUE + " bytes");
+                }
+                length = (int) Math.min(Integer.MAX_VALUE, 2L * length);
+            }
+            map(position, length);
+        }
+    }
+
+    @Override
+    public long charsRead() {
+        return charsRead;
+    }
+
+    // Time spent mapping windows. Pages are only read in when the scan touches
+    // them, so most of the reading shows up as scanning time instead.
+    long readNanos() {
+        return readNanos;
+    }
+
+    private void map(long start, int length) throws IOException {
+        Events.Read event = new Events.Read();
+        event.begin();
+        long started = System.nanoTime();
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(length, end - start));
+        readNanos += System.nanoTime() - started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.bytes = window.limit();
+            event.commit();
+        }
+    }
+
+    // Find the next separator in the window that starts at or after from, or -1
+    private int indexOfSeparator(int from) {
+        return ByteScan.indexOf(window, from, window.limit(), separator);
+    }
+
+    private String decode(int start, int length) {
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, 2 * bytes.length)];
+        }
+        window.get(start, bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,902 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Library entry point: the options compiled once into an immutable job that
+ * can process any number of files, from any number of threads at once.
+ * Nothing is shared between calls and nothing is written to System.out or
+ * System.err, each call reports how it ended through its {@link Status}.
+ */
+public final class ModiText {
+
+    /** How a call to {@link #process} ended. */
+    public enum Status {
+        /** The result was written to the output. */
+        OK,
+        /** Nothing was written, as the command line prints nothing. */
+        EMPTY,
+        /** The input was rejected, where the command line prints the usage message. */
+        INVALID_INPUT
+    }
+
+    private static final String separator = System.lineSeparator();
+    private final Pipeline pipeline;
+    // No options at all prints nothing
+    private final boolean noOptions;
+    // -o, the file the result is written to, or null
+    private final Path outputFile;
+    // -i, the result replaces the input file
+    private final boolean inPlace;
+    // --follow, lines appended to the file are processed as they arrive
+    private final boolean follow;
+    // --stats, and the JSON file they go to or null for stderr
+    private final boolean stats;
+    private final Path statsFile;
+    // --cache=DIR, results of unchanged files are served from it, or null
+    private final ResultCache cache;
+    // --index, lines are found through the FILE.idx sidecar, which --lines always uses
+    private final boolean indexed;
+    // --trigrams, -k only reads the blocks that the FILE.tri sidecar says could match
+    private final boolean trigrams;
+    // --lines=FROM-TO, only these lines are processed, counted from 1, or 0 for all of them
+    private final int firstLine;
+    private final int lastLine;
+
+    private ModiText(Pipeline pipeline, boolean noOptions, Path outputFile, boolean inPlace, boolean follow,
+                     boolean stats, Path statsFile, ResultCache cache, boolean indexed, boolean trigrams,
+                     int firstLine, int lastLine) {
+        this.pipeline = pipeline;
+        this.noOptions = noOptions;
+        this.outputFile = outputFile;
+        this.inPlace = inPlace;
+        this.follow = follow;
+        this.stats = stats;
+        this.statsFile = statsFile;
+        this.cache = cache;
+        this.indexed = indexed;
+        this.trigrams = trigrams;
+        this.firstLine = firstLine;
+        this.lastLine = lastLine;
+    }
+
+    /**
+     * Compiles the command line options, without the file.
+     *
+     * @param options the options in any order, as given to moditext
+     * @return the compiled job
+     * @throws IllegalArgumentException if the options are not valid
+     * @throws IOException if a -K pattern file cannot be read
+     */
+    public static ModiText compile(List<String> options) throws IOException {
+        return compile(options, Paths.get(""));
+    }
+
+    // Same, with -K pattern files and the -o file relative to directory
+    static ModiText compile(List<String> options, Path directory) throws IOException {
+        Events.Compile event = new Events.Compile();
+        event.begin();
+        boolean valid = false;
+        try {
+            ModiText job = build(options, directory);
+            valid = true;
+            return job;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.options = String.join(" ", options);
+                event.valid = valid;
+                event.commit();
+            }
+        }
+    }
+
+    private static ModiText build(List<String> options, Path directory) throws IOException {
+        Options parsed = optionsChecker(new ArrayList<>(options));
+        if (parsed == null) {
+            throw new IllegalArgumentException("Invalid options " + options);
+        }
+        List<String> ordered = parsed.ordered;
+        // --cache, --stats, --follow, -o, -i, --lines, --index and --trigrams are not in ordered, they only
+        // decide what is read, what is reported and where the result goes
+        Path statsFile = parsed.statsFile == null ? null : directory.resolve(parsed.statsFile);
+        Path outputFile = parsed.outputFile == null ? null : directory.resolve(parsed.outputFile);
+        Path cacheDirectory = parsed.cacheDirectory == null ? null : directory.resolve(parsed.cacheDirectory);
+        ResultCache cache = cacheDirectory == null ? null
+                : new ResultCache(cacheDirectory, cacheKey(ordered, parsed.lines, directory), ResultCache.MAX_BYTES);
+        int firstLine = 0;
+        int lastLine = 0;
+        if (parsed.lines != null) {
+            String range = parsed.lines;
+            int dash = range.indexOf('-');
+            firstLine = Integer.parseInt(range.substring(0, dash));
+            lastLine = dash == range.length() - 1 ? Integer.MAX_VALUE : Integer.parseInt(range.substring(dash + 1));
+        }
+        return new ModiText(Pipeline.compile(ordered, directory), ordered.isEmpty(), outputFile, parsed.inPlace,
+                parsed.follow, parsed.stats, statsFile, cache, parsed.index || firstLine > 0, parsed.trigrams,
+                firstLine, lastLine);
+    }
+
+    // What a cached result depends on: the options with -K files by their patterns, the --lines range,
+    // the separator and the charset
+    private static String cacheKey(List<String> ordered, String lines, Path directory) throws IOException {
+        StringBuilder key = new StringBuilder(Charset.defaultCharset().name()).append('\0').append(separator);
+        for (int i = 0; i < ordered.size(); i++) {
+            key.append('\0').append(ordered.get(i));
+            if (ordered.get(i).equals("-K")) {
+                key.append('\0').append(Files.readString(directory.resolve(ordered.get(++i)), StandardCharsets.UTF_8));
+            }
+        }
+        if (lines != null) {
+            key.append('\0').append("--lines").append('\0').append(lines);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Tells whether the options name where the result goes, with -o or -i,
+     * so that {@link #process(Path)} is the call to make.
+     *
+     * @return true if -o or -i was given
+     */
+    public boolean writesFile() {
+        return outputFile != null || inPlace;
+    }
+
+    // Whether -o FILE was given, which a batch of files cannot all be written to
+    boolean writesOutputFile() {
+        return outputFile != null;
+    }
+
+    /**
+     * Tells whether --follow was given, so that {@link #follow} is the call
+     * to make.
+     *
+     * @return true if --follow was given
+     */
+    public boolean follows() {
+        return follow;
+    }
+
+    /**
+     * Tells whether --stats was given, so the caller should report the
+     * {@link Stats} of each call.
+     *
+     * @return true if --stats was given
+     */
+    public boolean reportsStats() {
+        return stats;
+    }
+
+    /**
+     * The file named by --stats=FILE, for the stats as JSON.
+     *
+     * @return the file, or null when the stats go to stderr
+     */
+    public Path statsFile() {
+        return statsFile;
+    }
+
+    /**
+     * Processes one file and writes the result to the -o file, or with -i
+     * back over the input. The result is written to a temporary file in the
+     * same directory that is then moved over the target atomically, so the
+     * target is never left half written. With -i the input is left as it is
+     * when the result would be empty. A target whose name ends with .gz is
+     * written gzip compressed.
+     *
+     * @param input the file, which must end with a line separator
+     * @return how the call ended
+     * @throws IllegalStateException if neither -o nor -i was given
+     * @throws IOException if the file cannot be read or the target written
+     */
+    public Status process(Path input) throws IOException {
+        return process(input, new Stats());
+    }
+
+    /**
+     * Same as {@link #process(Path)}, counting into stats.
+     *
+     * @param input the file, which must end with a line separator
+     * @param stats the counters for this call
+     * @return how the call ended
+     * @throws IllegalStateException if neither -o nor -i was given
+     * @throws IOException if the file cannot be read or the target written
+     */
+    public Status process(Path input, Stats stats) throws IOException {
+        if (!writesFile()) {
+            throw new IllegalStateException("No -o or -i option");
+        }
+        return timed(input, stats, () -> writeTarget(inPlace ? input : outputFile, inPlace ? input : null,
+                output -> run(input, output, stats)));
+    }
+
+    /**
+     * Processes a stream and writes the result to the -o file, the same way
+     * as {@link #process(Path)}.
+     *
+     * @param input the text, which must end with a line separator
+     * @return how the call ended
+     * @throws IllegalStateException if -o was not given, or -i was
+     * @throws IOException if the input cannot be read or the target written
+     */
+    public Status process(InputStream input) throws IOException {
+        return process(input, new Stats());
+    }
+
+    /**
+     * Same as {@link #process(InputStream)}, counting into stats.
+     *
+     * @param input the text, which must end with a line separator
+     * @param stats the counters for this call
+     * @return how the call ended
+     * @throws IllegalStateException if -o was not given, or -i was
+     * @throws IOException if the input cannot be read or the target written
+     */
+    public Status process(InputStream input, Stats stats) throws IOException {
+        if (outputFile == null) {
+            throw new IllegalStateException("A stream needs -o, and cannot be edited in place");
+        }
+        return timed("stream", stats, () -> writeTarget(outputFile, null, output -> run(input, output, stats)));
+    }
+
+    // Where a run writes its result
+    interface Run {
+        Status into(WritableByteChannel output) throws IOException;
+    }
+
+    // One call, timed into stats
+    private interface Call {
+        Status run() throws IOException;
+    }
+
+    // Make the call and record its end in stats, and as flight recorder events when a recording asks for them
+    private Status timed(Object input, Stats stats, Call call) throws IOException {
+        Events.Process event = new Events.Process();
+        event.begin();
+        long start = System.nanoTime();
+        Status status = null;
+        try {
+            status = call.run();
+            return status;
+        } finally {
+            stats.finish(start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.input = input.toString();
+                event.status = String.valueOf(status);
+                event.bytesRead = stats.bytesRead;
+                event.bytesWritten = stats.bytesWritten;
+                event.linesIn = stats.linesIn;
+                event.linesOut = stats.linesOut;
+                event.commit();
+            }
+            pipeline.commitStages(stats);
+        }
+    }
+
+    // Write to a temporary file next to target and move it over target.
+    // With an original to replace, its permissions are kept and an empty result leaves it alone.
+    private static Status writeTarget(Path target, Path original, Run run) throws IOException {
+        Path absolute = target.toAbsolutePath();
+        Path temp = Files.createTempFile(absolute.getParent(), "." + absolute.getFileName(), ".tmp");
+        try {
+            Status status;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                if (isCompressed(absolute)) {
+                    // Compressed on the way out, the trailer is written by finish
+                    GZIPOutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(channel), 1 << 16);
+                    status = run.into(Channels.newChannel(gzip));
+                    gzip.finish();
+                } else {
+                    status = run.into(channel);
+                }
+                channel.force(true);
+            }
+            if (status == Status.INVALID_INPUT || (original != null && status == Status.EMPTY)) {
+                return status;
+            }
+            if (original != null) {
+                copyPermissions(original, temp);
+            }
+            Files.move(temp, absolute, StandardCopyOption.ATOMIC_MOVE);
+            return status;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // The temporary file is only readable by its owner, give it the original's permissions
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        try {
+            Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system, the default permissions stay
+        }
+    }
+
+    /**
+     * Processes one file and writes the result to output, which is flushed
+     * but not closed.
+     *
+     * @param input the file, which must end with a line separator
+     * @param output where the result goes, in the default charset
+     * @return how the call ended
+     * @throws IOException if the file cannot be read or the output written
+     */
+    public Status process(Path input, OutputStream output) throws IOException {
+        return process(input, output, new Stats());
+    }
+
+    /**
+     * Same as {@link #process(Path, OutputStream)}, counting into stats.
+     *
+     * @param input the file, which must end with a line separator
+     * @param output where the result goes, in the default charset
+     * @param stats the counters for this call
+     * @return how the call ended
+     * @throws IOException if the file cannot be read or the output written
+     */
+    public Status process(Path input, OutputStream output, Stats stats) throws IOException {
+        Status status = process(input, Channels.newChannel(output), stats);
+        output.flush();
+        return status;
+    }
+
+    /**
+     * Processes one file and writes the result to a channel, such as a
+     * FileChannel, which is not closed. A compressed file is decompressed
+     * into a temporary file first, so that as for a plain file nothing is
+     * written when it does not end with a line separator.
+     *
+     * @param input the file, which must end with a line separator, gzip
+     *              compressed if its name ends with .gz
+     * @param output where the result goes, in the default charset
+     * @return how the call ended
+     * @throws IOException if the file cannot be read or the output written
+     */
+    public Status process(Path input, WritableByteChannel output) throws IOException {
+        return process(input, output, new Stats());
+    }
+
+    /**
+     * Same as {@link #process(Path, WritableByteChannel)}, counting into stats.
+     *
+     * @param input the file, which must end with a line separator
+     * @param output where the result goes, in the default charset
+     * @param stats the counters for this call
+     * @return how the call ended
+     * @throws IOException if the file cannot be read or the output written
+     */
+    public Status process(Path input, WritableByteChannel output, Stats stats) throws IOException {
+        Run run = isCompressed(input) ? channel -> spooled(input, channel, stats)
+                : channel -> run(input, channel, stats);
+        if (cache != null) {
+            // The stats only count the work done, a hit counts nothing
+            return timed(input, stats, () -> cache.process(input, output, run));
+        }
+        return timed(input, stats, () -> run.into(output));
+    }
+
+    // A compressed file is only known to end with a separator once it is decompressed, so its result is
+    // written to a temporary file first and copied out after the check, like a plain file writes nothing
+    private Status spooled(Path input, WritableByteChannel output, Stats stats) throws IOException {
+        Path temp = Files.createTempFile("moditext", ".tmp");
+        try (FileChannel spool = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Status status = run(input, spool, stats);
+            if (status != Status.INVALID_INPUT) {
+                long size = spool.size();
+                for (long position = 0; position < size; ) {
+                    position += spool.transferTo(position, size - position, output);
+                }
+            }
+            return status;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Status run(Path input, WritableByteChannel output, Stats stats) throws IOException {
+        if (isCompressed(input)) {
+            // Decompressed as a stream, the trailing separator is checked at its end
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(input), 1 << 16)) {
+                return run(in, output, stats);
+            }
+        }
+        if (!endsWithSeparator(input)) {
+            return Status.INVALID_INPUT;
+        }
+        if (noOptions) {
+            return Status.EMPTY;
+        }
+        Charset charset = Charset.defaultCharset();
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            LineWriter writer = new LineWriter(output, charset, separator);
+            boolean large = channel.size() > MappedLineReader.THRESHOLD;
+            LineIndex index = indexed ? LineIndex.open(input, channel, separator) : null;
+            List<String> keep = pipeline.keepSubstrings();
+            boolean written;
+            if (firstLine > 0) {
+                written = runRange(index, channel, writer, stats);
+            } else if (trigrams && keep != null && TrigramIndex.covers(keep)) {
+                // Only the blocks that could hold a -k substring are read
+                TrigramIndex grams = TrigramIndex.open(input, channel, separator);
+                written = pipeline.runBlocks(channel, separator, grams, grams.candidates(keep), writer, stats);
+            } else if (pipeline.reverses() && index != null) {
+                // Walk the indexed lines backwards
+                IndexedReverseReader reader = new IndexedReverseReader(channel, index, separator, 0, index.lines(), channel.size());
+                written = pipeline.runBackwards(reader, writer, stats);
+                stats.readNanos += reader.readNanos();
+                stats.bytesRead += channel.size();
+            } else if (pipeline.reverses()) {
+                // Read backwards so -r does not need the whole file in memory
+                ReverseLineReader reader = new ReverseLineReader(channel, separator);
+                written = pipeline.runBackwards(reader, writer, stats);
+                stats.readNanos += reader.readNanos();
+                stats.bytesRead += channel.size();
+            } else if (large && Runtime.getRuntime().availableProcessors() > 1) {
+                // Large files are mapped and split across the cores, at the indexed lines if there is an index
+                written = new ParallelRunner(pipeline, channel, separator, ForkJoinPool.commonPool(), index).run(writer, stats);
+                stats.bytesRead += channel.size();
+            } else if (AsciiRunner.supports(pipeline, charset)) {
+                // ASCII lines are never decoded into Strings
+                written = new AsciiRunner(pipeline, separator).run(new MeteredInputStream(Channels.newInputStream(channel), stats), writer, stats);
+            } else if (large) {
+                MappedLineReader reader = new MappedLineReader(channel, separator);
+                written = pipeline.run(reader, writer, stats);
+                stats.readNanos += reader.readNanos();
+                stats.bytesRead += channel.size();
+            } else {
+                InputStream in = new MeteredInputStream(Channels.newInputStream(channel), stats);
+                written = pipeline.run(new LineReader(new InputStreamReader(in, StandardCharsets.UTF_8), separator), writer, stats);
+            }
+            writer.addTo(stats);
+            return written ? Status.OK : Status.EMPTY;
+        }
+    }
+
+    // --lines: the lines in the range are processed as if they were the whole file
+    private boolean runRange(LineIndex index, FileChannel channel, LineWriter writer, Stats stats) throws IOException {
+        int first = Math.min(firstLine - 1, index.lines());
+        int last = Math.min(lastLine, index.lines());
+        long start = index.start(first);
+        long end = index.start(last);
+        boolean written;
+        if (pipeline.reverses()) {
+            IndexedReverseReader reader = new IndexedReverseReader(channel, index, separator, first, last, end);
+            written = pipeline.runBackwards(reader, writer, stats);
+            stats.readNanos += reader.readNanos();
+        } else {
+            MappedLineReader reader = new MappedLineReader(channel, separator, start, end, MappedLineReader.WINDOW_SIZE);
+            written = pipeline.run(reader, writer, stats);
+            stats.readNanos += reader.readNanos();
+        }
+        stats.bytesRead += end - start;
+        return written;
+    }
+
+    /**
+     * Follows a file that is still being written, for --follow. The complete
+     * lines already in the file are written first, then each line appended
+     * later as soon as its line separator is. A file that gets shorter or is
+     * replaced, as log rotation does, is read again from its start. Runs
+     * until the thread is interrupted.
+     *
+     * @param input the file to follow
+     * @param output where the lines go, in the default charset, flushed
+     *               after each batch of lines
+     * @throws IllegalStateException if --follow was not given
+     * @throws IOException if the file cannot be read or the output written
+     * @throws InterruptedException when the thread is interrupted, which is
+     *                              how following ends
+     */
+    public void follow(Path input, OutputStream output) throws IOException, InterruptedException {
+        if (!follow) {
+            throw new IllegalStateException("No --follow option");
+        }
+        new Follower(pipeline, input, separator, output, new Stats(), Follower.POLL_MILLIS).run();
+    }
+
+    /**
+     * Processes a stream, such as System.in, writing each line as soon as it
+     * is ready. The stream is read to its end but not closed. Whether it ends
+     * with a line separator is only known at the end, so the lines before may
+     * already have been written when INVALID_INPUT is returned. With -r they
+     * are held to the end anyway, and nothing is written.
+     *
+     * @param input the text, which must end with a line separator
+     * @param output where the result goes, in the default charset
+     * @return how the call ended
+     * @throws IOException if the input cannot be read or the output written
+     */
+    public Status process(InputStream input, OutputStream output) throws IOException {
+        return process(input, output, new Stats());
+    }
+
+    /**
+     * Same as {@link #process(InputStream, OutputStream)}, counting into stats.
+     *
+     * @param input the text, which must end with a line separator
+     * @param output where the result goes, in the default charset
+     * @param stats the counters for this call
+     * @return how the call ended
+     * @throws IOException if the input cannot be read or the output written
+     */
+    public Status process(InputStream input, OutputStream output, Stats stats) throws IOException {
+        return timed("stream", stats, () -> {
+            Status status = run(input, Channels.newChannel(output), stats);
+            output.flush();
+            return status;
+        });
+    }
+
+    private Status run(InputStream input, WritableByteChannel output, Stats stats) throws IOException {
+        if (firstLine > 0) {
+            throw new IllegalStateException("--lines needs an uncompressed file");
+        }
+        TailInputStream in = new TailInputStream(new MeteredInputStream(input, stats), separator.getBytes(StandardCharsets.UTF_8).length);
+        if (noOptions) {
+            in.transferTo(OutputStream.nullOutputStream());
+            return in.endsWith(separator) ? Status.EMPTY : Status.INVALID_INPUT;
+        }
+        Charset charset = Charset.defaultCharset();
+        LineWriter writer = new LineWriter(output, charset, separator);
+        // Checked before the lines held back for -r are written, so a rejected stream is not reversed out
+        BooleanSupplier complete = () -> in.endsWith(separator);
+        boolean written;
+        if (AsciiRunner.supports(pipeline, charset)) {
+            written = new AsciiRunner(pipeline, separator).run(in, writer, stats, complete);
+        } else {
+            written = pipeline.run(new LineReader(new InputStreamReader(in, StandardCharsets.UTF_8), separator), writer,
+                    stats, complete);
+        }
+        writer.addTo(stats);
+        if (!in.endsWith(separator)) {
+            return Status.INVALID_INPUT;
+        }
+        return written ? Status.OK : Status.EMPTY;
+    }
+
+    // Counts the bytes read and the time spent reading them into stats
+    private static final class MeteredInputStream extends FilterInputStream {
+
+        private final Stats stats;
+
+        MeteredInputStream(InputStream in, Stats stats) {
+            super(in);
+            this.stats = stats;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = in.read();
+            stats.readNanos += System.nanoTime() - start;
+            if (b >= 0) {
+                stats.bytesRead++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Events.Read event = new Events.Read();
+            event.begin();
+            long start = System.nanoTime();
+            int read = in.read(b, off, len);
+            stats.readNanos += System.nanoTime() - start;
+            if (read > 0) {
+                stats.bytesRead += read;
+            }
+            event.end();
+            if (read > 0 && event.shouldCommit()) {
+                event.bytes = read;
+                event.commit();
+            }
+            return read;
+        }
+    }
+
+    // Remembers the last bytes read, to check the trailing separator at the end of a stream
+    private static final class TailInputStream extends FilterInputStream {
+
+        private final byte[] tail;
+        private long count = 0;
+
+        TailInputStream(InputStream in, int length) {
+            super(in);
+            this.tail = new byte[length];
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                remember(new byte[] {(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                remember(b, off, read);
+            }
+            return read;
+        }
+
+        private void remember(byte[] b, int off, int len) {
+            int keep = Math.min(len, tail.length);
+            System.arraycopy(tail, keep, tail, 0, tail.length - keep);
+            System.arraycopy(b, off + len - keep, tail, tail.length - keep, keep);
+            count += len;
+        }
+
+        // An empty stream counts as ending with the separator, like an empty file
+        boolean endsWith(String separator) {
+            return count == 0
+                    || (count >= tail.length && Arrays.equals(tail, separator.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    // Text files moditext reads, plain or gzip compressed
+    static boolean isInputName(String name) {
+        return name.endsWith(".txt") || name.endsWith(".txt.gz");
+    }
+
+    private static boolean isCompressed(Path file) {
+        return file.toString().endsWith(".gz");
+    }
+
+    // Check that the file ends with a line separator, reading only its last bytes
+    private static boolean endsWithSeparator(Path file) throws IOException {
+        byte[] expected = separator.getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return true;
+            }
+            if (size < expected.length) {
+                return false;
+            }
+            ByteBuffer tail = ByteBuffer.allocate(expected.length);
+            while (tail.hasRemaining()) {
+                if (channel.read(tail, size - expected.length + tail.position()) < 0) {
+                    return false;
+                }
+            }
+            return Arrays.equals(tail.array(), expected);
+        }
+    }
+
+    // What optionsChecker found. ordered holds the options in the order they
+    // run, the others were taken from where they stood in the arguments, so a
+    // -k or -f parameter that looks like one of them is never mistaken for it.
+    private static final class Options {
+        final List<String> ordered = new ArrayList<>();
+        String outputFile;
+        boolean inPlace;
+        boolean follow;
+        boolean stats;
+        String statsFile;
+        String cacheDirectory;
+        boolean index;
+        boolean trigrams;
+        String lines;
+    }
+
+    // Method to reorganize the options, check for errors, and return ordered options (null if invalid)
+    private static Options optionsChecker(List<String> options) {
+        // Valid options in order
+        List<String> validOptions = Arrays.asList("-k", "-K", "-p", "-t", "-g", "-f", "-r", "--index", "--trigrams", "--lines", "-o", "-i",
+                "--follow",
+                "--stats", "--cache");
+
+        Map<String, List<String>> optionsMap = new LinkedHashMap<>();
+        boolean hasPadOption = false;
+        boolean hasTrimOption = false;
+
+        if (options.isEmpty()) {
+            return new Options();
+        }
+
+        for (int i = 0; i < options.size(); i++) {
+            String option = options.get(i);
+
+            // --stats=FILE writes the stats to FILE as JSON instead of to stderr
+            if (option.startsWith("--stats=") && option.length() > "--stats=".length()) {
+                optionsMap.put("--stats", Collections.singletonList(option.substring("--stats=".length())));
+                continue;
+            }
+
+            // --lines=FROM-TO processes lines FROM to TO, counted from 1, and --lines=FROM- to the end
+            if (option.matches("--lines=[0-9]{1,9}-[0-9]{0,9}")) {
+                String[] range = option.substring("--lines=".length()).split("-", -1);
+                int first = Integer.parseInt(range[0]);
+                if (first < 1 || (!range[1].isEmpty() && Integer.parseInt(range[1]) < first)) {
+                    return null;
+                }
+                optionsMap.put("--lines", Collections.singletonList(option.substring("--lines=".length())));
+                continue;
+            }
+
+            // --cache=DIR keeps the results in DIR
+            if (option.startsWith("--cache=") && option.length() > "--cache=".length()) {
+                optionsMap.put("--cache", Collections.singletonList(option.substring("--cache=".length())));
+                continue;
+            }
+
+            if (!validOptions.contains(option)) {
+                return null;
+            }
+
+            List<String> params = new ArrayList<>();
+
+            switch (option) {
+                case "-p":
+                    if (hasTrimOption) {
+                        return null;
+                    }
+                    hasPadOption = true;
+                    if (i + 2 >= options.size() || options.get(i + 1).length() != 1 || !isInteger(options.get(i + 2))) {
+                        return null;
+                    }
+                    int maxPadding = Integer.parseInt(options.get(i + 2));
+                    if (maxPadding < 1 || maxPadding > 100) {
+                        return null;
+                    }
+                    params.add(options.get(i + 1));
+                    params.add(options.get(i + 2));
+                    i += 2;
+                    break;
+                case "-t":
+                    if (hasPadOption) {
+                        return null;
+                    }
+                    hasTrimOption = true;
+                    if (i + 1 >= options.size() || !isInteger(options.get(i + 1))) {
+                        return null;
+                    }
+                    int num = Integer.parseInt(options.get(i + 1));
+                    if (num < 0 || num > 100) {
+                        return null;
+                    }
+                    params.add(options.get(i + 1));
+                    i++;
+                    break;
+                case "-k":
+                    if (i + 1 >= options.size()) {
+                        return null;
+                    }
+                    params.add(options.get(i + 1));
+                    i++;
+                    break;
+                case "-K":
+                    // File with one substring to keep per line
+                    if (i + 1 >= options.size() || options.get(i + 1).isEmpty()) {
+                        return null;
+                    }
+                    params.add(options.get(i + 1));
+                    i++;
+                    break;
+                case "-f":
+                    if (i + 2 >= options.size()) {
+                        return null;
+                    }
+                    String style = options.get(i + 1);
+                    if (!style.equals("bold") && !style.equals("italic") && !style.equals("code")) {
+                        return null;
+                    }
+                    if (options.get(i + 2).isEmpty()) {
+                        return null;
+                    }
+                    params.add(style);
+                    params.add(options.get(i + 2));
+                    i += 2;
+                    break;
+                case "-g":
+                    if (!options.contains("-f")) {
+                        return null;
+                    }
+                    break;
+                case "-o":
+                    // Output file, instead of stdout or together with -i
+                    if (i + 1 >= options.size() || options.get(i + 1).isEmpty()) {
+                        return null;
+                    }
+                    params.add(options.get(i + 1));
+                    i++;
+                    break;
+                case "--cache":
+                case "--lines":
+                    // Only as --cache=DIR and --lines=FROM-TO
+                    return null;
+            }
+
+            optionsMap.put(option, params);
+        }
+
+        // -o and -i both name where the result goes
+        if (optionsMap.containsKey("-o") && optionsMap.containsKey("-i")) {
+            return null;
+        }
+
+        // --follow writes lines as they are appended, so there is no end to reverse, write out or cut
+        if (optionsMap.containsKey("--follow") && (optionsMap.containsKey("-r") || optionsMap.containsKey("-o")
+                || optionsMap.containsKey("-i") || optionsMap.containsKey("--lines"))) {
+            return null;
+        }
+
+        Options parsed = new Options();
+        for (String opt : validOptions) {
+            List<String> params = optionsMap.get(opt);
+            if (params == null) {
+                continue;
+            }
+            switch (opt) {
+                case "-o":
+                    parsed.outputFile = params.get(0);
+                    break;
+                case "-i":
+                    parsed.inPlace = true;
+                    break;
+                case "--follow":
+                    parsed.follow = true;
+                    break;
+                case "--stats":
+                    parsed.stats = true;
+                    parsed.statsFile = params.isEmpty() ? null : params.get(0);
+                    break;
+                case "--cache":
+                    parsed.cacheDirectory = params.get(0);
+                    break;
+                case "--index":
+                    parsed.index = true;
+                    break;
+                case "--trigrams":
+                    parsed.trigrams = true;
+                    break;
+                case "--lines":
+                    parsed.lines = params.get(0);
+                    break;
+                default:
+                    parsed.ordered.add(opt);
+                    parsed.ordered.addAll(params);
+                    break;
+            }
+        }
+
+        return parsed;
+    }
+
+    // Check if it's a valid integer
+    private static boolean isInteger(String str) {
+        try {
+            Integer.parseInt(str);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Runs the pipeline over a large file on a ForkJoinPool. The file is cut into
+// chunks at separators, every chunk is kept and transformed on its own, and the
+// results are handed to the pass in the original order, so -r still works.
+class ParallelRunner {
+
+    static final long CHUNK_SIZE = 4L << 20;
+
+    private final Pipeline pipeline;
+    private final FileChannel channel;
+    private final String separator;
+    private final byte[] separatorBytes;
+    private final ForkJoinPool pool;
+    private final long chunkSize;
+    // Where the lines start, to cut chunks without looking for separators, or null
+    private final LineIndex index;
+
+    ParallelRunner(Pipeline pipeline, FileChannel channel, String separator, ForkJoinPool pool, LineIndex index) {
+        this(pipeline, channel, separator, pool, CHUNK_SIZE, index);
+    }
+
+    ParallelRunner(Pipeline pipeline, FileChannel channel, String separator, ForkJoinPool pool, long chunkSize,
+                   LineIndex index) {
+        this.pipeline = pipeline;
+        this.channel = channel;
+        this.separator = separator;
+        this.separatorBytes = separator.getBytes(StandardCharsets.UTF_8);
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.index = index;
+    }
+
+    // Same as Pipeline.run over the whole file, returns false if the output has to be empty.
+    // Every chunk counts into its own stats, added up in order.
+    boolean run(LineWriter out, Stats stats) throws IOException {
+        Pipeline.Pass pass = pipeline.new Pass(out, stats);
+        // Only a few chunks are in flight, so memory stays bounded
+        int maxInFlight = 2 * pool.getParallelism();
+        Deque<ForkJoinTask<Chunk>> inFlight = new ArrayDeque<>();
+        long size = channel.size();
+        long charsRead = 0;
+        try {
+            long start = 0;
+            boolean last = false;
+            while (!last) {
+                long end = nextCut(start + chunkSize, size);
+                last = end == size;
+                long chunkStart = start;
+                boolean lastChunk = last;
+                inFlight.add(pool.submit(() -> readChunk(chunkStart, end, lastChunk)));
+                while (inFlight.size() >= maxInFlight) {
+                    charsRead += await(inFlight.poll()).stitch(pass, stats);
+                }
+                start = end;
+            }
+            while (!inFlight.isEmpty()) {
+                charsRead += await(inFlight.poll()).stitch(pass, stats);
+            }
+        } finally {
+            for (ForkJoinTask<Chunk> task : inFlight) {
+                task.cancel(true);
+            }
+        }
+        return pass.finish(charsRead);
+    }
+
+    // Position just after the first separator at or after from, or size if there is none
+    private long nextCut(long from, long size) throws IOException {
+        if (index != null) {
+            long cut = index.start(index.lineAtOrAfter(from));
+            return cut >= from ? cut : size;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        int matched = 0;
+        for (long position = from; position < size; ) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < read; i++) {
+                if (matched == 0) {
+                    // Skip to the next byte that can start a separator
+                    i = ByteScan.indexOf(bytes, i, read, separatorBytes[0]);
+                    if (i < 0) {
+                        break;
+                    }
+                }
+                byte b = bytes[i];
+                if (b != separatorBytes[matched]) {
+                    matched = b == separatorBytes[0] ? 1 : 0;
+                } else {
+                    matched++;
+                }
+                if (matched == separatorBytes.length) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    // Keep and transform the lines from start to end, runs on the pool
+    private Chunk readChunk(long start, long end, boolean last) throws IOException {
+        MappedLineReader reader = new MappedLineReader(channel, separator, start, end, MappedLineReader.WINDOW_SIZE);
+        Chunk chunk = new Chunk();
+        StringBuilder stage = new StringBuilder();
+        StringBuilder result = new StringBuilder();
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (line.isEmpty()) {
+                chunk.trailingEmpty++;
+            } else {
+                // The result is held until the chunk is stitched, so it cannot stay in the reused buffer
+                CharSequence applied = pipeline.apply(line, stage, result, chunk.stats);
+                chunk.add(applied == null ? null : applied.toString());
+            }
+        }
+        // Other chunks end on a separator, so their last piece is not a line
+        if (!last) {
+            chunk.trailingEmpty--;
+        }
+        chunk.charsRead = reader.charsRead();
+        chunk.stats.readNanos += reader.readNanos();
+        return chunk;
+    }
+
+    private static Chunk await(ForkJoinTask<Chunk> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    // Results of one chunk. results[i] is what apply returned for the i-th
+    // non-empty line, and emptyBefore[i] counts the empty lines just before it.
+    private static class Chunk {
+        private String[] results = new String[64];
+        private int[] emptyBefore = new int[64];
+        private int count = 0;
+        private int trailingEmpty = 0;
+        private long charsRead = 0;
+        private final Stats stats = new Stats();
+
+        void add(String result) {
+            if (count == results.length) {
+                results = Arrays.copyOf(results, 2 * count);
+                emptyBefore = Arrays.copyOf(emptyBefore, 2 * count);
+            }
+            results[count] = result;
+            emptyBefore[count] = trailingEmpty;
+            trailingEmpty = 0;
+            count++;
+        }
+
+        // Hand the results to the pass in order, returns the chars read
+        long stitch(Pipeline.Pass pass, Stats total) throws IOException {
+            total.add(stats);
+            for (int i = 0; i < count; i++) {
+                pass.empty(emptyBefore[i]);
+                pass.line(results[i]);
+            }
+            pass.empty(trailingEmpty);
+            return charsRead;
+        }
+    }
+}
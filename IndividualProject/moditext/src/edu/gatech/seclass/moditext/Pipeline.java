@@ -0,0 +1,467 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+// The ordered options from optionsChecker compiled into a single pass:
+// keep -> pad/trim -> format -> reverse sink, touching each line once.
+// -k and -K together keep the lines that contain any of their substrings.
+//
+// The old methods split and joined the content between every option. Past
+// the first split that only changes the output in two places, which are
+// handled here instead of between stages:
+// - when -k keeps nothing, the next option still sees one empty line
+// - after -t 0 every line is empty, so a later option sees no lines at all
+final class Pipeline {
+
+    private final KeepFilter keep;
+    private final char symbol;
+    private final int maxPadding;
+    // maxPadding copies of symbol, every pad is a run of it
+    private final char[] padding;
+    private final int num;
+    private final LiteralFormatter formatter;
+    private final boolean reverse;
+    private final boolean dropLines;
+    // What an empty line turns into, the same for every run
+    private final String emptyResult;
+
+    private Pipeline(KeepFilter keep, char symbol, int maxPadding, int num, String style, String subStr,
+                     boolean global, boolean reverse) {
+        this.keep = keep;
+        this.symbol = symbol;
+        this.maxPadding = maxPadding;
+        this.padding = new char[Math.max(0, maxPadding)];
+        Arrays.fill(padding, symbol);
+        this.num = num;
+        this.formatter = style == null ? null : new LiteralFormatter(style, subStr, global);
+        this.reverse = reverse;
+        this.dropLines = num == 0 && (style != null || reverse);
+        this.emptyResult = transform("", new StringBuilder(), new StringBuilder(), new Stats(), 0).toString();
+    }
+
+    // Compile the ordered options returned by optionsChecker, reading any -K pattern file
+    static Pipeline compile(List<String> options) throws IOException {
+        return compile(options, Paths.get(""));
+    }
+
+    // Same, with -K pattern files relative to directory
+    static Pipeline compile(List<String> options, Path directory) throws IOException {
+        List<String> keep = new ArrayList<>();
+        char symbol = 0;
+        int maxPadding = -1;
+        int num = -1;
+        String style = null;
+        String subStr = null;
+        boolean reverse = false;
+        for (int i = 0; i < options.size(); i++) {
+            String option = options.get(i);
+
+            if (option.equals("-k")) {
+                keep.add(options.get(++i));
+            } else if (option.equals("-K")) {
+                keep.addAll(readPatterns(directory.resolve(options.get(++i))));
+            } else if (option.equals("-p")) {
+                symbol = options.get(++i).charAt(0);
+                maxPadding = Integer.parseInt(options.get(++i));
+            } else if (option.equals("-t")) {
+                num = Integer.parseInt(options.get(++i));
+            } else if (option.equals("-f")) {
+                style = options.get(++i);
+                subStr = options.get(++i);
+            } else if (option.equals("-r")) {
+                reverse = true;
+            }
+        }
+        KeepFilter filter = keep.isEmpty() ? null : KeepFilter.of(keep);
+        return new Pipeline(filter, symbol, maxPadding, num, style, subStr, options.contains("-g"), reverse);
+    }
+
+    // One substring per line, empty lines are skipped
+    private static List<String> readPatterns(Path file) throws IOException {
+        List<String> patterns = new ArrayList<>();
+        for (String pattern : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!pattern.isEmpty()) {
+                patterns.add(pattern);
+            }
+        }
+        if (patterns.isEmpty()) {
+            throw new IOException("No patterns in " + file);
+        }
+        return patterns;
+    }
+
+    // Run every line through the options, returns false if the output has to be empty
+    boolean run(LineSource reader, LineWriter out) throws IOException {
+        return run(reader, out, new Stats());
+    }
+
+    // Same, counting into stats
+    boolean run(LineSource reader, LineWriter out, Stats stats) throws IOException {
+        return run(reader, out, stats, () -> true);
+    }
+
+    // Same, where complete tells at the end whether the input is valid, for a stream that is only checked there
+    boolean run(LineSource reader, LineWriter out, Stats stats, BooleanSupplier complete) throws IOException {
+        Pass pass = new Pass(out, stats, complete);
+        StringBuilder stage = new StringBuilder();
+        StringBuilder result = new StringBuilder();
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (line.isEmpty()) {
+                pass.empty(1);
+            } else {
+                pass.line(apply(line, stage, result, stats));
+            }
+        }
+        return pass.finish(reader.charsRead());
+    }
+
+    // Run -r from lines read last to first, so no line has to be held until the end.
+    // Empty lines are only known to be trailing, or to come after a kept line,
+    // once an earlier non-empty line turns up.
+    boolean runBackwards(LineSource backwards, LineWriter out, Stats stats) throws IOException {
+        long pendingEmpty = 0;
+        boolean passed = false;
+        boolean kept = false;
+        StringBuilder stage = new StringBuilder();
+        StringBuilder transformed = new StringBuilder();
+        for (String line = backwards.readLine(); line != null; line = backwards.readLine()) {
+            stats.linesIn++;
+            if (line.isEmpty()) {
+                pendingEmpty++;
+                continue;
+            }
+            // Empty lines after this one are in the middle, so only -k can drop them
+            if (passed && (keep == null || keep.matchesEmpty())) {
+                for (; pendingEmpty > 0; pendingEmpty--) {
+                    write(out, emptyResult);
+                }
+            }
+            pendingEmpty = 0;
+            passed = true;
+            CharSequence result = apply(line, stage, transformed, stats);
+            if (result != null) {
+                kept = true;
+                write(out, result);
+            }
+        }
+        // The piece after the final separator is not a line
+        stats.linesIn--;
+        // Same check as keepLines, substrings longer than the file give no output
+        if (keep != null && keep.shortest() > backwards.charsRead()) {
+            return false;
+        }
+        // Empty lines before the first non-empty one, or the only line of an empty file
+        if (keep == null && (passed || pendingEmpty <= 1)) {
+            for (long i = passed ? pendingEmpty : 1; i > 0; i--) {
+                write(out, emptyResult);
+            }
+        }
+        if (keep != null && !kept) {
+            write(out, emptyResult);
+        }
+        out.finish();
+        return true;
+    }
+
+    // Run only the blocks of the file that the trigram index picked out for -k.
+    // A skipped block has no line to keep, and -k drops its empty lines too,
+    // so it only has to be counted.
+    boolean runBlocks(FileChannel channel, String separator, TrigramIndex index, BitSet candidates, LineWriter out,
+                      Stats stats) throws IOException {
+        Pass pass = new Pass(out, stats);
+        StringBuilder stage = new StringBuilder();
+        StringBuilder result = new StringBuilder();
+        byte[] separatorBytes = separator.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[TrigramIndex.BLOCK_SIZE];
+        for (int block = 0; block < index.blocks(); block++) {
+            if (!candidates.get(block)) {
+                stats.linesIn += index.blockLines(block);
+                continue;
+            }
+            long start = index.blockStart(block);
+            int length = (int) (index.blockStart(block + 1) - start);
+            if (length > bytes.length) {
+                bytes = new byte[length];
+            }
+            long started = System.nanoTime();
+            TrigramIndex.readFully(channel, ByteBuffer.wrap(bytes, 0, length), start);
+            stats.readNanos += System.nanoTime() - started;
+            stats.bytesRead += length;
+            // The block is whole lines, each ending with a separator
+            int lineStart = 0;
+            for (int i; (i = ByteScan.indexOf(bytes, lineStart, length, separatorBytes)) >= 0; ) {
+                if (i == lineStart) {
+                    pass.empty(1);
+                } else {
+                    pass.line(apply(new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8), stage, result, stats));
+                }
+                lineStart = i + separatorBytes.length;
+            }
+        }
+        // The piece after the final separator
+        pass.empty(1);
+        return pass.finish(index.chars());
+    }
+
+    // The -k and -K substrings, or null without them
+    List<String> keepSubstrings() {
+        return keep == null ? null : keep.substrings();
+    }
+
+    private void write(LineWriter out, CharSequence line) throws IOException {
+        if (!dropLines) {
+            out.write(line);
+        }
+    }
+
+    // Same as apply for a non-empty line of ASCII bytes, the result goes to out.
+    // stage holds the padded or trimmed line when it still has to be formatted.
+    // Returns false if -k drops the line.
+    boolean applyAscii(byte[] line, int from, int to, ByteLine stage, ByteLine out, Stats stats) {
+        long start = stats.startSample();
+        if (keep != null) {
+            stats.keepIn++;
+            boolean matches = keep.matchesAscii(line, from, to);
+            start = stats.lap(Stats.KEEP, start);
+            if (!matches) {
+                return false;
+            }
+            stats.keepOut++;
+        }
+        ByteLine target = formatter == null ? out : stage;
+        target.clear();
+        if (maxPadding >= 0) {
+            if (to - from < maxPadding) {
+                stats.padded++;
+            }
+            target.fill((byte) symbol, Math.max(0, maxPadding - (to - from)));
+            start = stats.lap(Stats.PAD, start);
+        }
+        if (num >= 0 && to - from > num) {
+            stats.truncated++;
+        }
+        target.append(line, from, num >= 0 ? Math.min(to, from + num) : to);
+        if (num >= 0) {
+            start = stats.lap(Stats.TRIM, start);
+        }
+        if (formatter != null) {
+            out.clear();
+            stats.replacements += formatter.appendAscii(stage.bytes, 0, stage.length, out);
+            stats.lap(Stats.FORMAT, start);
+        }
+        return true;
+    }
+
+    // The byte-level path cannot reverse, and pads with single bytes only
+    boolean supportsAscii() {
+        return !reverse && (maxPadding < 0 || symbol < 0x80);
+    }
+
+    boolean reverses() {
+        return reverse;
+    }
+
+    // One flight recorder event per option for a finished run, when a recording asks for them
+    void commitStages(Stats stats) {
+        long reached = stats.applied();
+        if (keep != null) {
+            commitStage("-k", reached, stats.keepOut, reached - stats.keepOut, stats.stageNanos[Stats.KEEP]);
+            reached = stats.keepOut;
+        }
+        if (maxPadding >= 0) {
+            commitStage("-p", reached, reached, stats.padded, stats.stageNanos[Stats.PAD]);
+        }
+        if (num >= 0) {
+            commitStage("-t", reached, reached, stats.truncated, stats.stageNanos[Stats.TRIM]);
+        }
+        if (formatter != null) {
+            commitStage("-f", reached, reached, stats.replacements, stats.stageNanos[Stats.FORMAT]);
+        }
+    }
+
+    private static void commitStage(String option, long linesIn, long linesOut, long changed, long nanos) {
+        Events.Stage event = new Events.Stage();
+        if (event.shouldCommit()) {
+            event.option = option;
+            event.linesIn = linesIn;
+            event.linesOut = linesOut;
+            event.changed = changed;
+            event.estimatedTime = nanos;
+            event.commit();
+        }
+    }
+
+    // Keep and transform one non-empty line, or null if -k drops it.
+    // This only depends on the line, so chunks of lines can run in parallel,
+    // each with its own buffers and stats. The result is the line itself when
+    // nothing changes it, otherwise out, which is reused by the next call.
+    // stage holds the padded or trimmed line when it still has to be formatted.
+    CharSequence apply(String line, StringBuilder stage, StringBuilder out, Stats stats) {
+        long start = stats.startSample();
+        if (keep != null) {
+            stats.keepIn++;
+            boolean matches = keep.matches(line);
+            start = stats.lap(Stats.KEEP, start);
+            if (!matches) {
+                return null;
+            }
+            stats.keepOut++;
+        }
+        return transform(line, stage, out, stats, start);
+    }
+
+    // Apply pad/trim and format to a line that was kept, timing it from start if it is sampled.
+    // Padding and trimming only decide how many pad chars and line chars are
+    // left, and one copy does both, timed as -p when there is one.
+    private CharSequence transform(String line, StringBuilder stage, StringBuilder out, Stats stats, long start) {
+        int pad = 0;
+        if (maxPadding >= 0 && line.length() < maxPadding) {
+            stats.padded++;
+            pad = maxPadding - line.length();
+        }
+        int length = line.length();
+        if (num >= 0 && pad + length > num) {
+            stats.truncated++;
+            pad = Math.min(pad, num);
+            length = num - pad;
+        }
+        CharSequence text = line;
+        if (pad > 0 || length < line.length()) {
+            StringBuilder target = formatter == null ? out : stage;
+            target.setLength(0);
+            text = target.append(padding, 0, pad).append(line, 0, length);
+        }
+        if (maxPadding >= 0) {
+            start = stats.lap(Stats.PAD, start);
+        }
+        if (num >= 0) {
+            start = stats.lap(Stats.TRIM, start);
+        }
+        if (formatter != null) {
+            out.setLength(0);
+            int replacements = formatter.appendTo(text, 0, text.length(), out);
+            stats.replacements += replacements;
+            stats.lap(Stats.FORMAT, start);
+            return replacements == 0 && text == line ? line : out;
+        }
+        return text;
+    }
+
+    // Ordered state for one run over the input. Empty lines are held back
+    // until we know they are not trailing, the way split drops them.
+    final class Pass {
+        private final LineWriter out;
+        private final Stats stats;
+        private final BooleanSupplier complete;
+        private final List<String> reversed = reverse ? new ArrayList<>() : null;
+        private long pendingEmpty = 0;
+        private boolean passed = false;
+        private boolean kept = false;
+
+        Pass(LineWriter out, Stats stats) {
+            this(out, stats, () -> true);
+        }
+
+        // complete is asked at the end whether the input is valid
+        Pass(LineWriter out, Stats stats, BooleanSupplier complete) {
+            this.out = out;
+            this.stats = stats;
+            this.complete = complete;
+        }
+
+        // The next count input lines are empty
+        void empty(long count) {
+            pendingEmpty += count;
+            stats.linesIn += count;
+        }
+
+        // The next input line was not empty, result is what apply returned for it
+        void line(CharSequence result) throws IOException {
+            stats.linesIn++;
+            for (; pendingEmpty > 0; pendingEmpty--) {
+                acceptEmpty();
+            }
+            passed = true;
+            if (result != null) {
+                kept = true;
+                emit(result);
+            }
+        }
+
+        // Same as line for an ASCII line, result is null if -k dropped it
+        void lineAscii(ByteLine result) throws IOException {
+            stats.linesIn++;
+            for (; pendingEmpty > 0; pendingEmpty--) {
+                acceptEmpty();
+            }
+            passed = true;
+            if (result != null) {
+                kept = true;
+                if (!dropLines) {
+                    out.write(result.bytes, 0, result.length);
+                }
+            }
+        }
+
+        // End of input, returns false if the output has to be empty
+        boolean finish(long charsRead) throws IOException {
+            // The piece after the final separator is not a line
+            stats.linesIn--;
+            // Invalid input writes nothing more, with -r that is nothing at all
+            if (!complete.getAsBoolean()) {
+                out.flush();
+                return false;
+            }
+            // Same check as keepLines, substrings longer than the file give no output
+            if (keep != null && keep.shortest() > charsRead) {
+                return false;
+            }
+            // Content with no lines at all still counts as one empty line
+            if (!passed && pendingEmpty <= 1) {
+                acceptEmpty();
+            }
+            if (keep != null && !kept) {
+                emit(emptyResult);
+            }
+            if (reversed != null) {
+                for (int i = reversed.size() - 1; i >= 0; i--) {
+                    out.write(reversed.get(i));
+                }
+            }
+            out.finish();
+            return true;
+        }
+
+        private void acceptEmpty() throws IOException {
+            if (keep != null) {
+                // keepLines also drops empty lines before the first kept text
+                if (!keep.matchesEmpty() || !kept) {
+                    return;
+                }
+            }
+            emit(emptyResult);
+        }
+
+        private void emit(CharSequence line) throws IOException {
+            if (dropLines) {
+                return;
+            }
+            if (reversed != null) {
+                reversed.add(line.toString());
+            } else {
+                out.write(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+// --cache=DIR: results kept on disk, keyed by the options and the content of
+// the input, so a file that has not changed is answered by copying its old
+// result out instead of running the options again.
+//
+// Hashing the whole input would cost about as much as processing it, so the
+// content hash is remembered per path, size and modification time. A file
+// with the same stat is taken to have the same content, and only a changed
+// file is hashed again.
+//
+// Entries are written to a temporary file and renamed into place, so other
+// processes either see a whole entry or none. A hit marks its entry as used
+// by touching it, and after each new entry the least recently used ones are
+// deleted until the cache fits in maxBytes again.
+final class ResultCache {
+
+    static final long MAX_BYTES = 256L << 20;
+
+    private static final String RESULT = ".out";
+    private static final String STAT = ".stat";
+
+    private final Path directory;
+    // The options and everything else the output depends on
+    private final String options;
+    private final long maxBytes;
+
+    ResultCache(Path directory, String options, long maxBytes) {
+        this.directory = directory;
+        this.options = options;
+        this.maxBytes = maxBytes;
+    }
+
+    // Write the result of input to output, from the cache or from run, which then fills the cache
+    ModiText.Status process(Path input, WritableByteChannel output, ModiText.Run run) throws IOException {
+        Files.createDirectories(directory);
+        Path entry = directory.resolve(hash(options + '\0' + contentHash(input)) + RESULT);
+        ModiText.Status cached = serve(entry, output);
+        if (cached != null) {
+            return cached;
+        }
+        Path temp = Files.createTempFile(directory, "entry", ".tmp");
+        try {
+            ModiText.Status status;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                // The first byte is the status, only known at the end
+                channel.position(1);
+                status = run.into(new TeeChannel(output, channel));
+                channel.write(ByteBuffer.wrap(new byte[] {(byte) status.ordinal()}), 0);
+            }
+            if (status != ModiText.Status.INVALID_INPUT) {
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+                evict();
+            }
+            return status;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Copy a cached result to output, or null if there is none
+    private static ModiText.Status serve(Path entry, WritableByteChannel output) throws IOException {
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            ByteBuffer status = ByteBuffer.allocate(1);
+            if (channel.read(status, 0) != 1) {
+                return null;
+            }
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            long size = channel.size();
+            for (long position = 1; position < size; ) {
+                position += channel.transferTo(position, size - position, output);
+            }
+            return ModiText.Status.values()[status.get(0)];
+        } catch (NoSuchFileException e) {
+            // Never cached, or evicted by another process
+            return null;
+        }
+    }
+
+    // The hash of the file's bytes, remembered for as long as its stat stays the same
+    private String contentHash(Path input) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(input, BasicFileAttributes.class);
+        Path stat = directory.resolve(hash(input.toAbsolutePath() + "\0" + attributes.size() + "\0"
+                + attributes.lastModifiedTime() + "\0" + attributes.fileKey()) + STAT);
+        try {
+            String content = Files.readString(stat, StandardCharsets.US_ASCII);
+            if (content.length() == 64) {
+                Files.setLastModifiedTime(stat, FileTime.fromMillis(System.currentTimeMillis()));
+                return content;
+            }
+        } catch (NoSuchFileException e) {
+            // Not hashed yet at this stat
+        }
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        String content = HexFormat.of().formatHex(digest.digest());
+        Path temp = Files.createTempFile(directory, "stat", ".tmp");
+        try {
+            Files.writeString(temp, content, StandardCharsets.US_ASCII);
+            Files.move(temp, stat, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return content;
+    }
+
+    // Delete the least recently used entries until the cache fits.
+    // One process evicts at a time, the others leave it to the one that is at it.
+    private void evict() throws IOException {
+        try (FileChannel lockFile = FileChannel.open(directory.resolve("lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = lockFile.tryLock()) {
+            if (lock == null) {
+                return;
+            }
+            List<Entry> entries = new ArrayList<>();
+            long total = 0;
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    String name = file.getFileName().toString();
+                    if (!name.endsWith(RESULT) && !name.endsWith(STAT)) {
+                        continue;
+                    }
+                    try {
+                        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                        entries.add(new Entry(file, attributes.size(), attributes.lastModifiedTime()));
+                        total += attributes.size();
+                    } catch (NoSuchFileException e) {
+                        // Just evicted by another process
+                    }
+                }
+            }
+            entries.sort(Comparator.comparing(entry -> entry.used));
+            for (int i = 0; i < entries.size() && total > maxBytes; i++) {
+                Files.deleteIfExists(entries.get(i).file);
+                total -= entries.get(i).size;
+            }
+        } catch (OverlappingFileLockException e) {
+            // Another thread of this process is evicting
+        }
+    }
+
+    private static final class Entry {
+        final Path file;
+        final long size;
+        final FileTime used;
+
+        Entry(Path file, long size, FileTime used) {
+            this.file = file;
+            this.size = size;
+            this.used = used;
+        }
+    }
+
+    private static String hash(String text) {
+        return HexFormat.of().formatHex(sha256().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Writes to the output and copies what was written into the cache entry
+    private static final class TeeChannel implements WritableByteChannel {
+
+        private final WritableByteChannel output;
+        private final FileChannel copy;
+
+        TeeChannel(WritableByteChannel output, FileChannel copy) {
+            this.output = output;
+            this.copy = copy;
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            ByteBuffer written = source.duplicate();
+            int count = output.write(source);
+            written.limit(written.position() + count);
+            while (written.hasRemaining()) {
+                copy.write(written);
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return output.isOpen();
+        }
+
+        @Override
+        public void close() {
+            // The output and the entry are closed by their owners
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+// Reads the lines of a file from last to first with positional reads of
+// fixed-size blocks, so only one block and the current line are in memory.
+// The pieces are those of content.split(separator, -1) in reverse order.
+class ReverseLineReader implements LineSource {
+
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final byte[] separator;
+    private final int separatorChars;
+    private final int blockSize;
+    // buffer holds the file bytes from bufferStart up to lineEnd
+    private byte[] buffer;
+    private long bufferStart;
+    private long lineEnd;
+    private boolean finished = false;
+    private long charsRead = 0;
+    private long readNanos = 0;
+
+    ReverseLineReader(FileChannel channel, String separator) throws IOException {
+        this(channel, separator, BLOCK_SIZE);
+    }
+
+    ReverseLineReader(FileChannel channel, String separator, int blockSize) throws IOException {
+        this.channel = channel;
+        this.separator = separator.getBytes(StandardCharsets.UTF_8);
+        this.separatorChars = separator.length();
+        this.blockSize = blockSize;
+        this.buffer = new byte[Math.max(blockSize, this.separator.length)];
+        this.bufferStart = channel.size();
+        this.lineEnd = bufferStart;
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        if (finished) {
+            return null;
+        }
+        // A separator has to fit in front of the end of the current line
+        long candidate = lineEnd - separator.length;
+        while (true) {
+            for (; candidate >= bufferStart; candidate--) {
+                if (isSeparator((int) (candidate - bufferStart))) {
+                    String line = decode(candidate + separator.length);
+                    charsRead += line.length() + separatorChars;
+                    lineEnd = candidate;
+                    return line;
+                }
+            }
+            if (bufferStart == 0) {
+                // Text before the first separator
+                finished = true;
+                String line = decode(0);
+                charsRead += line.length();
+                return line;
+            }
+            candidate = Math.min(bufferStart - 1, lineEnd - separator.length);
+            readPreviousBlock();
+        }
+    }
+
+    @Override
+    public long charsRead() {
+        return charsRead;
+    }
+
+    // Time spent reading blocks
+    long readNanos() {
+        return readNanos;
+    }
+
+    private boolean isSeparator(int index) {
+        for (int i = 0; i < separator.length; i++) {
+            if (buffer[index + i] != separator[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Read the block before bufferStart, keeping the part of the current line already read
+    private void readPreviousBlock() throws IOException {
+        long start = Math.max(0, bufferStart - blockSize);
+        int length = (int) (bufferStart - start);
+        int kept = (int) (lineEnd - bufferStart);
+        if (length + kept > buffer.length) {
+            byte[] grown = new byte[Math.max(length + kept, 2 * buffer.length)];
+            System.arraycopy(buffer, 0, grown, length, kept);
+            buffer = grown;
+        } else {
+            System.arraycopy(buffer, 0, buffer, length, kept);
+        }
+        Events.Read event = new Events.Read();
+        event.begin();
+        long started = System.nanoTime();
+        ByteBuffer target = ByteBuffer.wrap(buffer, 0, length);
+        while (target.hasRemaining()) {
+            if (channel.read(target, start + target.position()) < 0) {
+                throw new IOException("File changed while it was read");
+            }
+        }
+        readNanos += System.nanoTime() - started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.bytes = length;
+            event.commit();
+        }
+        bufferStart = start;
+    }
+
+    private String decode(long lineStart) {
+        int from = (int) (lineStart - bufferStart);
+        return new String(buffer, from, (int) (lineEnd - lineStart), StandardCharsets.UTF_8);
+    }
+}
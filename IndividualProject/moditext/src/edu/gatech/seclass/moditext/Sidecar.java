@@ -0,0 +1,119 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+// An index kept next to the file it is for, as FILE.idx or FILE.tri. The
+// header names the kind of index and the file's size, modification time and
+// separator when it was built, so an index of another version of the file is
+// never used but built again and saved over the old one. The index itself
+// follows the header, where numbers are mostly written as varints.
+final class Sidecar {
+
+    // The part of the sidecar after the header
+    interface Content {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    interface Reader<T> {
+        T readFrom(DataInputStream in) throws IOException;
+    }
+
+    interface Builder<T> {
+        T build() throws IOException;
+    }
+
+    private final String suffix;
+    private final int magic;
+    private final int version;
+
+    Sidecar(String suffix, int magic, int version) {
+        this.suffix = suffix;
+        this.magic = magic;
+        this.version = version;
+    }
+
+    Path path(Path file) {
+        return file.resolveSibling(file.getFileName() + suffix);
+    }
+
+    // The index of file, read from its sidecar or built and saved there
+    <T extends Content> T open(Path file, FileChannel channel, String separator, Reader<T> reader, Builder<T> builder)
+            throws IOException {
+        Path sidecar = path(file);
+        long size = channel.size();
+        long modified = Files.getLastModifiedTime(file).to(TimeUnit.NANOSECONDS);
+        T index = read(sidecar, size, modified, separator, reader);
+        if (index == null) {
+            index = builder.build();
+            try {
+                write(sidecar, size, modified, separator, index);
+            } catch (IOException e) {
+                // A directory we cannot write to, the index is only used for this run
+            }
+        }
+        return index;
+    }
+
+    // The index in sidecar, or null if there is none or it is for another version of the file
+    private <T> T read(Path sidecar, long size, long modified, String separator, Reader<T> reader) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            if (in.readInt() != magic || in.readInt() != version || in.readLong() != size
+                    || in.readLong() != modified || !in.readUTF().equals(separator)) {
+                return null;
+            }
+            return reader.readFrom(in);
+        } catch (NoSuchFileException | EOFException e) {
+            // Not built yet, or cut short
+            return null;
+        }
+    }
+
+    // Write to a temporary file that is renamed over sidecar, so a reader never sees half an index
+    private void write(Path sidecar, long size, long modified, String separator, Content content) throws IOException {
+        Path temp = Files.createTempFile(sidecar.toAbsolutePath().getParent(), "." + sidecar.getFileName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(magic);
+                out.writeInt(version);
+                out.writeLong(size);
+                out.writeLong(modified);
+                out.writeUTF(separator);
+                content.writeTo(out);
+            }
+            Files.move(temp, sidecar, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Seven bits per byte, the high bit set on every byte but the last
+    static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package edu.gatech.seclass.moditext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Locale;
+
+/**
+ * Counters for one run of a {@link ModiText} job, for --stats.
+ *
+ * <p>The counts are plain fields bumped by the thread doing the work, and
+ * parallel chunks count into their own Stats that are added up in order,
+ * so nothing is locked or boxed per line. Timing every line would cost more
+ * than the work on short lines, so the time of each option is taken on one
+ * line in {@value #SAMPLE_RATE} and scaled up. Read and write times are
+ * taken around each buffer. What is left of the total is reported as other:
+ * splitting lines, setting up the run and, on a cold JVM, class loading and
+ * compiling, which dwarf the rest on a small file.
+ */
+public final class Stats {
+
+    /** One line in this many is timed, stage times are estimates. */
+    public static final int SAMPLE_RATE = 64;
+
+    // The stages timed per line, in option order
+    static final int KEEP = 0;
+    static final int PAD = 1;
+    static final int TRIM = 2;
+    static final int FORMAT = 3;
+    private static final String[] STAGE_NAMES = {"-k", "-p", "-t", "-f"};
+
+    long linesIn;
+    long linesOut;
+    long keepIn;
+    long keepOut;
+    long padded;
+    long truncated;
+    long replacements;
+    long bytesRead;
+    long bytesWritten;
+    long readNanos;
+    long writeNanos;
+    long totalNanos;
+    long peakHeapBytes;
+    final long[] stageNanos = new long[STAGE_NAMES.length];
+    private long sampled;
+
+    // Start timing a line if it is one of the sampled ones, 0 if it is not
+    long startSample() {
+        return (sampled++ % SAMPLE_RATE) == 0 ? System.nanoTime() : 0;
+    }
+
+    // Non-empty lines run through the options, the lines that reach the first one
+    long applied() {
+        return sampled;
+    }
+
+    // Charge the time since start to stage, returns the new start
+    long lap(int stage, long start) {
+        if (start == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        stageNanos[stage] += (now - start) * SAMPLE_RATE;
+        return now;
+    }
+
+    // Add the counts of a chunk that ran on another thread
+    void add(Stats other) {
+        linesIn += other.linesIn;
+        linesOut += other.linesOut;
+        keepIn += other.keepIn;
+        keepOut += other.keepOut;
+        padded += other.padded;
+        truncated += other.truncated;
+        replacements += other.replacements;
+        bytesRead += other.bytesRead;
+        bytesWritten += other.bytesWritten;
+        readNanos += other.readNanos;
+        writeNanos += other.writeNanos;
+        sampled += other.sampled;
+        for (int i = 0; i < stageNanos.length; i++) {
+            stageNanos[i] += other.stageNanos[i];
+        }
+    }
+
+    // Record the end of the run
+    void finish(long startNanos) {
+        totalNanos = System.nanoTime() - startNanos;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        peakHeapBytes = peak;
+    }
+
+    /** @return lines in the input */
+    public long linesIn() {
+        return linesIn;
+    }
+
+    /** @return lines written to the output */
+    public long linesOut() {
+        return linesOut;
+    }
+
+    /** @return non-empty lines checked by -k */
+    public long keepIn() {
+        return keepIn;
+    }
+
+    /** @return non-empty lines kept by -k */
+    public long keepOut() {
+        return keepOut;
+    }
+
+    /** @return lines padded by -p */
+    public long padded() {
+        return padded;
+    }
+
+    /** @return lines truncated by -t */
+    public long truncated() {
+        return truncated;
+    }
+
+    /** @return substrings wrapped by -f */
+    public long replacements() {
+        return replacements;
+    }
+
+    /** @return bytes read from the input */
+    public long bytesRead() {
+        return bytesRead;
+    }
+
+    /** @return bytes written to the output */
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    /** @return nanoseconds spent reading the input */
+    public long readNanos() {
+        return readNanos;
+    }
+
+    /** @return nanoseconds spent writing the output */
+    public long writeNanos() {
+        return writeNanos;
+    }
+
+    /**
+     * @param option one of -k, -p, -t or -f
+     * @return estimated nanoseconds spent in the option
+     */
+    public long optionNanos(String option) {
+        for (int i = 0; i < STAGE_NAMES.length; i++) {
+            if (STAGE_NAMES[i].equals(option)) {
+                return stageNanos[i];
+            }
+        }
+        throw new IllegalArgumentException("No timing for " + option);
+    }
+
+    /**
+     * @return nanoseconds not spent reading, writing or in an option: splitting
+     *         lines, setup and on a cold JVM class loading and compiling
+     */
+    public long otherNanos() {
+        long other = totalNanos - readNanos - writeNanos;
+        for (long stage : stageNanos) {
+            other -= stage;
+        }
+        return Math.max(0, other);
+    }
+
+    /** @return nanoseconds for the whole run */
+    public long totalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return the highest heap use of the whole JVM since it started, in
+     *         bytes, so under the daemon or a batch it includes the jobs
+     *         before and beside this one
+     */
+    public long peakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    /** @return the counters as one JSON object */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        appendJson(json, "linesIn", linesIn);
+        appendJson(json, "linesOut", linesOut);
+        appendJson(json, "keepIn", keepIn);
+        appendJson(json, "keepOut", keepOut);
+        appendJson(json, "padded", padded);
+        appendJson(json, "truncated", truncated);
+        appendJson(json, "replacements", replacements);
+        appendJson(json, "bytesRead", bytesRead);
+        appendJson(json, "bytesWritten", bytesWritten);
+        appendJson(json, "readNanos", readNanos);
+        appendJson(json, "otherNanos", otherNanos());
+        appendJson(json, "keepNanos", stageNanos[KEEP]);
+        appendJson(json, "padNanos", stageNanos[PAD]);
+        appendJson(json, "trimNanos", stageNanos[TRIM]);
+        appendJson(json, "formatNanos", stageNanos[FORMAT]);
+        appendJson(json, "writeNanos", writeNanos);
+        appendJson(json, "totalNanos", totalNanos);
+        appendJson(json, "peakHeapBytes", peakHeapBytes);
+        json.setLength(json.length() - 1);
+        return json.append('}').toString();
+    }
+
+    private static void appendJson(StringBuilder json, String name, long value) {
+        json.append('"').append(name).append("\":").append(value).append(',');
+    }
+
+    /** @return the counters for people, one per line */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(String.format(Locale.ROOT, "moditext stats%n"));
+        text.append(String.format(Locale.ROOT, "  lines       %d in, %d out%n", linesIn, linesOut));
+        text.append(String.format(Locale.ROOT, "  -k          %d in, %d kept%n", keepIn, keepOut));
+        text.append(String.format(Locale.ROOT, "  -p/-t       %d padded, %d truncated%n", padded, truncated));
+        text.append(String.format(Locale.ROOT, "  -f          %d replacements%n", replacements));
+        text.append(String.format(Locale.ROOT, "  bytes       %d read, %d written%n", bytesRead, bytesWritten));
+        text.append(String.format(Locale.ROOT, "  time (ms)   read %.3f, write %.3f, other %.3f, total %.3f%n",
+                readNanos / 1e6, writeNanos / 1e6, otherNanos() / 1e6, totalNanos / 1e6));
+        text.append(String.format(Locale.ROOT, "  option (ms) -k %.3f, -p %.3f, -t %.3f, -f %.3f (sampled)%n",
+                stageNanos[KEEP] / 1e6, stageNanos[PAD] / 1e6, stageNanos[TRIM] / 1e6, stageNanos[FORMAT] / 1e6));
+        text.append(String.format(Locale.ROOT, "  peak heap   %d bytes (whole JVM)%n", peakHeapBytes));
+        return text.toString();
+    }
+}
@@ -0,0 +1,240 @@
+package edu.gatech.seclass.moditext;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+// --trigrams: which blocks of a file hold which trigrams, so -k only has to
+// look at the blocks that could contain its substrings. A block is about
+// BLOCK_SIZE bytes of whole lines. A line with a substring holds every
+// trigram of its UTF-8 bytes, so a block that misses one of them cannot
+// have a match and is skipped. The blocks that are left are checked line by
+// line as usual, so the index only decides what is read, never what is kept.
+//
+// Trigrams are hashed into BUCKETS posting lists, which keeps the index small
+// whatever the text; a collision only costs a block that is read for nothing.
+// The index is kept next to the file as FILE.tri, with the block starts and
+// postings as varint gaps, and is built again when the file's size,
+// modification time or the separator no longer match.
+final class TrigramIndex implements Sidecar.Content {
+
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private static final Sidecar SIDECAR = new Sidecar(".tri", 0x4d545452, 1);
+    private static final int BUCKETS = 1 << 20;
+
+    // blockStarts[i] is where block i starts, blockStarts[blocks()] is where the piece after the last separator starts
+    private final long[] blockStarts;
+    private final long[] blockLines;
+    // The chars of the whole file, for the -k check against the file's length
+    private final long chars;
+    // postings[bucket] lists the blocks holding a trigram of that bucket, null for none
+    private final int[][] postings;
+
+    private TrigramIndex(long[] blockStarts, long[] blockLines, long chars, int[][] postings) {
+        this.blockStarts = blockStarts;
+        this.blockLines = blockLines;
+        this.chars = chars;
+        this.postings = postings;
+    }
+
+    // The index of file, read from its sidecar or built and saved there
+    static TrigramIndex open(Path file, FileChannel channel, String separator) throws IOException {
+        return SIDECAR.open(file, channel, separator, TrigramIndex::readFrom,
+                () -> build(channel, separator, BLOCK_SIZE));
+    }
+
+    static Path sidecar(Path file) {
+        return SIDECAR.path(file);
+    }
+
+    // Cut the file into blocks at line starts and collect the trigrams of each block's lines
+    static TrigramIndex build(FileChannel channel, String separator, int blockSize) throws IOException {
+        LineIndex lines = LineIndex.build(channel, separator);
+        int[] counts = new int[BUCKETS];
+        int[][] postings = new int[BUCKETS][];
+        BitSet seen = new BitSet(BUCKETS);
+        int[] touched = new int[1024];
+        long[] blockStarts = new long[64];
+        long[] blockLines = new long[64];
+        int blocks = 0;
+        long chars = 0;
+        byte[] bytes = new byte[blockSize];
+        for (int line = 0; line < lines.lines(); ) {
+            // Whole lines up to about blockSize bytes, at least one
+            int first = line;
+            long start = lines.start(first);
+            line = Math.max(first + 1, lines.lineAtOrAfter(start + blockSize));
+            int length = (int) (lines.start(line) - start);
+            if (length > bytes.length) {
+                bytes = new byte[length];
+            }
+            readFully(channel, ByteBuffer.wrap(bytes, 0, length), start);
+            chars += new String(bytes, 0, length, StandardCharsets.UTF_8).length();
+            int distinct = 0;
+            // Trigrams across a separator are never in a substring of a line, but they do no harm either
+            for (int i = 0; i + 2 < length; i++) {
+                int bucket = bucket(bytes[i], bytes[i + 1], bytes[i + 2]);
+                if (!seen.get(bucket)) {
+                    seen.set(bucket);
+                    if (distinct == touched.length) {
+                        touched = Arrays.copyOf(touched, 2 * distinct);
+                    }
+                    touched[distinct++] = bucket;
+                }
+            }
+            for (int i = 0; i < distinct; i++) {
+                int bucket = touched[i];
+                seen.clear(bucket);
+                if (postings[bucket] == null) {
+                    postings[bucket] = new int[4];
+                } else if (counts[bucket] == postings[bucket].length) {
+                    postings[bucket] = Arrays.copyOf(postings[bucket], 2 * counts[bucket]);
+                }
+                postings[bucket][counts[bucket]++] = blocks;
+            }
+            if (blocks + 1 == blockStarts.length) {
+                blockStarts = Arrays.copyOf(blockStarts, 2 * blockStarts.length);
+                blockLines = Arrays.copyOf(blockLines, 2 * blockLines.length);
+            }
+            blockStarts[blocks] = start;
+            blockLines[blocks] = line - first;
+            blocks++;
+        }
+        blockStarts[blocks] = lines.start(lines.lines());
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if (postings[bucket] != null) {
+                postings[bucket] = Arrays.copyOf(postings[bucket], counts[bucket]);
+            }
+        }
+        return new TrigramIndex(Arrays.copyOf(blockStarts, blocks + 1), Arrays.copyOf(blockLines, blocks), chars, postings);
+    }
+
+    // Whether the index can tell where the substrings are. Short substrings have
+    // no trigram, and decoding turns bad bytes into U+FFFD, which is then in no trigram.
+    static boolean covers(List<String> substrings) {
+        for (String substring : substrings) {
+            if (substring.getBytes(StandardCharsets.UTF_8).length < 3 || substring.indexOf('\uFFFD') >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The blocks that could hold a line with one of the substrings, which the index has to cover
+    BitSet candidates(List<String> substrings) {
+        BitSet candidates = new BitSet(blocks());
+        for (String substring : substrings) {
+            byte[] bytes = substring.getBytes(StandardCharsets.UTF_8);
+            BitSet matching = new BitSet(blocks());
+            matching.set(0, blocks());
+            for (int i = 0; i + 2 < bytes.length && !matching.isEmpty(); i++) {
+                BitSet holding = new BitSet(blocks());
+                int[] posting = postings[bucket(bytes[i], bytes[i + 1], bytes[i + 2])];
+                if (posting != null) {
+                    for (int block : posting) {
+                        holding.set(block);
+                    }
+                }
+                matching.and(holding);
+            }
+            candidates.or(matching);
+        }
+        return candidates;
+    }
+
+    int blocks() {
+        return blockLines.length;
+    }
+
+    long blockStart(int block) {
+        return blockStarts[block];
+    }
+
+    long blockLines(int block) {
+        return blockLines[block];
+    }
+
+    long chars() {
+        return chars;
+    }
+
+    private static int bucket(byte b0, byte b1, byte b2) {
+        int trigram = (b0 & 0xff) << 16 | (b1 & 0xff) << 8 | (b2 & 0xff);
+        return (trigram * 0x9e3779b1) >>> 12;
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) {
+                throw new IOException("File changed while it was read");
+            }
+        }
+    }
+
+    // The blocks and postings, after the sidecar header
+    private static TrigramIndex readFrom(DataInputStream in) throws IOException {
+        long chars = in.readLong();
+        int blocks = in.readInt();
+        long[] blockStarts = new long[blocks + 1];
+        long[] blockLines = new long[blocks];
+        for (int i = 1; i <= blocks; i++) {
+            blockStarts[i] = blockStarts[i - 1] + Sidecar.readVarint(in);
+        }
+        for (int i = 0; i < blocks; i++) {
+            blockLines[i] = Sidecar.readVarint(in);
+        }
+        int[][] postings = new int[BUCKETS][];
+        int bucket = 0;
+        for (int used = in.readInt(); used > 0; used--) {
+            bucket += (int) Sidecar.readVarint(in);
+            int[] posting = new int[(int) Sidecar.readVarint(in)];
+            int block = 0;
+            for (int i = 0; i < posting.length; i++) {
+                block += (int) Sidecar.readVarint(in);
+                posting[i] = block;
+            }
+            postings[bucket] = posting;
+        }
+        return new TrigramIndex(blockStarts, blockLines, chars, postings);
+    }
+
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(chars);
+        out.writeInt(blocks());
+        for (int i = 1; i <= blocks(); i++) {
+            Sidecar.writeVarint(out, blockStarts[i] - blockStarts[i - 1]);
+        }
+        for (long lines : blockLines) {
+            Sidecar.writeVarint(out, lines);
+        }
+        int used = 0;
+        for (int[] posting : postings) {
+            used += posting == null ? 0 : 1;
+        }
+        out.writeInt(used);
+        int previous = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            int[] posting = postings[bucket];
+            if (posting == null) {
+                continue;
+            }
+            Sidecar.writeVarint(out, bucket - previous);
+            previous = bucket;
+            Sidecar.writeVarint(out, posting.length);
+            int block = 0;
+            for (int next : posting) {
+                Sidecar.writeVarint(out, next - block);
+                block = next;
+            }
+        }
+    }
+}
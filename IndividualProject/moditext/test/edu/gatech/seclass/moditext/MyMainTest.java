@@ -6,9 +6,35 @@ import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 
 @Timeout(value = 1, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
@@ -1380,4 +1406,1145 @@ public class MyMainTest {
         Assertions.assertEquals(input, getFileContent(inputFile));
     }
 
+    @Test
+    // streaming: empty lines before the first kept line and trailing empty lines are dropped
+    public void moditextTest76() {
+        String input = System.lineSeparator()
+                + "alpha" + System.lineSeparator()
+                + System.lineSeparator()
+                + "beta" + System.lineSeparator()
+                + System.lineSeparator()
+                + System.lineSeparator();
+        String expected = "alpha" + System.lineSeparator()
+                + System.lineSeparator()
+                + "beta" + System.lineSeparator();
+
+        Path inputFile = createFile(input);
+        String[] args = {"-k", "", inputFile.toString()};
+        Main.main(args);
+
+        Assertions.assertEquals(expected, capture.stdout());
+        Assertions.assertTrue(capture.stderr().isEmpty());
+        Assertions.assertEquals(input, getFileContent(inputFile));
+    }
+
+    @Test
+    // streaming: lines trimmed to nothing are still printed when -t is the last option
+    public void moditextTest77() {
+        String input = "one" + System.lineSeparator()
+                + "two" + System.lineSeparator();
+        String expected = System.lineSeparator() + System.lineSeparator();
+
+        Path inputFile = createFile(input);
+        String[] args = {"-t", "0", inputFile.toString()};
+        Main.main(args);
+
+        Assertions.assertEquals(expected, capture.stdout());
+        Assertions.assertTrue(capture.stderr().isEmpty());
+        Assertions.assertEquals(input, getFileContent(inputFile));
+    }
+
+    @Test
+    // streaming: a large file is processed line by line
+    public void moditextTest78() {
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            String line = "line " + i;
+            input.append(line).append(System.lineSeparator());
+            if (line.contains("99")) {
+                expected.append(line, 0, Math.min(line.length(), 8)).append(System.lineSeparator());
+            }
+        }
+
+        Path inputFile = createFile(input.toString());
+        String[] args = {"-k", "99", "-t", "8", inputFile.toString()};
+        Main.main(args);
+
+        Assertions.assertEquals(expected.toString(), capture.stdout());
+        Assertions.assertTrue(capture.stderr().isEmpty());
+    }
+
+    @Test
+    // pipeline: -t 0 leaves no lines for a later option
+    public void moditextTest79() {
+        String input = "one" + System.lineSeparator()
+                + "two" + System.lineSeparator()
+                + "three" + System.lineSeparator();
+        String expected = System.lineSeparator();
+
+        Path inputFile = createFile(input);
+        String[] args = {"-t", "0", "-f", "bold", "o", "-r", inputFile.toString()};
+        Main.main(args);
+
+        Assertions.assertEquals(expected, capture.stdout());
+        Assertions.assertTrue(capture.stderr().isEmpty());
+        Assertions.assertEquals(input, getFileContent(inputFile));
+    }
+
+    @Test
+    // mapped input: lines longer than the window still come back whole
+    public void moditextTest80() throws IOException {
+        String input = "a" + System.lineSeparator()
+                + "longer than the window" + System.lineSeparator()
+                + System.lineSeparator()
+                + "caf\u00e9 \u00e9t\u00e9" + System.lineSeparator();
+
+        Path inputFile = createFile(input);
+        List<String> lines = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(inputFile)) {
+            LineSource source = new MappedLineReader(channel, System.lineSeparator(), 4);
+            for (String line = source.readLine(); line != null; line = source.readLine()) {
+                lines.add(line);
+            }
+            Assertions.assertEquals(input.length(), source.charsRead());
+        }
+
+        Assertions.assertEquals(Arrays.asList(input.split(System.lineSeparator(), -1)), lines);
+    }
+
+    @Test
+    // parallel: chunks are stitched back in order and -r still reverses them
+    public void moditextTest81() throws IOException {
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            input.append("row ").append(i).append(System.lineSeparator());
+            input.append(System.lineSeparator());
+        }
+        for (int i = 199; i >= 0; i--) {
+            if (String.valueOf(i).contains("1")) {
+                expected.append("**row** ").append(i).append(System.lineSeparator());
+            }
+        }
+
+        Path inputFile = createFile(input.toString());
+        List<String> options = Arrays.asList("-k", "1", "-f", "bold", "row", "-r");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try (FileChannel channel = FileChannel.open(inputFile)) {
+            ParallelRunner runner = new ParallelRunner(Pipeline.compile(options), channel, System.lineSeparator(), pool, 64, null);
+            Assertions.assertTrue(runner.run(new LineWriter(Channels.newChannel(output), StandardCharsets.UTF_8, System.lineSeparator()),
+                    new Stats()));
+        } finally {
+            pool.shutdown();
+        }
+
+        Assertions.assertEquals(expected.toString(), output.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    // reverse: lines are read from last to first across block boundaries
+    public void moditextTest82() throws IOException {
+        String input = "first line" + System.lineSeparator()
+                + System.lineSeparator()
+                + "a line longer than a block" + System.lineSeparator()
+                + "\u00e9\u00e9" + System.lineSeparator();
+
+        Path inputFile = createFile(input);
+        List<String> lines = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(inputFile)) {
+            LineSource source = new ReverseLineReader(channel, System.lineSeparator(), 3);
+            for (String line = source.readLine(); line != null; line = source.readLine()) {
+                lines.add(0, line);
+            }
+            Assertions.assertEquals(input.length(), source.charsRead());
+        }
+
+        Assertions.assertEquals(Arrays.asList(input.split(System.lineSeparator(), -1)), lines);
+    }
+
+    @Test
+    // -K: keep lines containing any substring from the pattern file, together with -k
+    public void moditextTest83() {
+        String input = "host-a is up" + System.lineSeparator()
+                + "host-b is down" + System.lineSeparator()
+                + "host-c is up" + System.lineSeparator()
+                + "router is down" + System.lineSeparator();
+        String expected = "host-a is up" + System.lineSeparator()
+                + "host-c is up" + System.lineSeparator()
+                + "router is down" + System.lineSeparator();
+
+        Path inputFile = createFile(input);
+        Path patternFile = createFile("host-a" + System.lineSeparator()
+                + System.lineSeparator()
+                + "host-c" + System.lineSeparator(), "patterns.txt");
+        String[] args = {"-K", patternFile.toString(), "-k", "router", inputFile.toString()};
+        Main.main(args);
+
+        Assertions.assertEquals(expected, capture.stdout());
+        Assertions.assertTrue(capture.stderr().isEmpty());
+        Assertions.assertEquals(input, getFileContent(inputFile));
+    }
+
+    @Test
+    // -K: missing pattern file
+    public void moditextTest84() {
+        String input = "Test 84" + System.lineSeparator();
+
+        Path inputFile = createFile(input);
+        String[] args = {"-K", "/tmp/nonExistingPatterns", inputFile.toString()};
+        Main.main(args);
+
+        Assertions.assertTrue(capture.stdout().isEmpty());
+        Assertions.assertEquals(usageStr, capture.stderr());
+        Assertions.assertEquals(input, getFileContent(inputFile));
+    }
+
+    @Test
+    // -f: the substring is wrapped literally, even with regex replacement characters
+    public void moditextTest85() {
+        String input = "costs $5, or $5 with tax" + System.lineSeparator()
+                + "a\\b" + System.lineSeparator();
+        String expected = "costs `$5`, or `$5` with tax" + System.lineSeparator()
+                + "a\\b" + System.lineSeparator();
+
+        Path inputFile = createFile(input);
+        String[] args = {"-g", "-f", "code", "$5", inputFile.toString()};
+        Main.main(args);
+
+        Assertions.assertEquals(expected, capture.stdout());
+        Assertions.assertTrue(capture.stderr().isEmpty());
+        Assertions.assertEquals(input, getFileContent(inputFile));
+    }
+
+    @Test
+    // Byte-level path: ASCII and multibyte lines mixed give the same output as the String path
+    public void moditextTest86() throws IOException {
+        String sep = System.lineSeparator();
+        String input = "cafe au lait" + sep + "caf\u00e9 cr\u00e8me" + sep + sep + "no match" + sep + "caf\u00e9 caf" + sep;
+        List<String> options = Arrays.asList("-k", "caf", "-p", "#", "14", "-g", "-f", "bold", "caf");
+        Pipeline pipeline = Pipeline.compile(options);
+        Assertions.assertTrue(AsciiRunner.supports(pipeline, StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AsciiRunner runner = new AsciiRunner(pipeline, sep);
+        Assertions.assertTrue(runner.run(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+                new LineWriter(Channels.newChannel(bytes), StandardCharsets.UTF_8, sep)));
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        LineSource source = new LineReader(new StringReader(input), sep);
+        Assertions.assertTrue(pipeline.run(source, new LineWriter(Channels.newChannel(strings), StandardCharsets.UTF_8, sep)));
+
+        String expected = "##**caf**e au lait" + sep + "####**caf**\u00e9 cr\u00e8me" + sep + "######**caf**\u00e9 **caf**" + sep;
+        Assertions.assertEquals(expected, bytes.toString(StandardCharsets.UTF_8));
+        Assertions.assertEquals(expected, strings.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    // Daemon: concurrent jobs keep their own output and error state
+    public void moditextTest87() throws Exception {
+        String input = "Test 87" + System.lineSeparator();
+        Path inputFile = createFile(input);
+        Path socket = tempDirectory.resolve("moditext.sock");
+
+        try (Daemon daemon = new Daemon(socket, 2)) {
+            Thread server = new Thread(() -> {
+                try {
+                    daemon.serve();
+                } catch (IOException e) {
+                    // closed by the test
+                }
+            });
+            server.setDaemon(true);
+            server.start();
+
+            ByteArrayOutputStream badOut = new ByteArrayOutputStream();
+            ByteArrayOutputStream badErr = new ByteArrayOutputStream();
+            ByteArrayOutputStream goodOut = new ByteArrayOutputStream();
+            ByteArrayOutputStream goodErr = new ByteArrayOutputStream();
+            ForkJoinPool pool = new ForkJoinPool(2);
+            try {
+                ForkJoinTask<Boolean> bad = pool.submit(() -> DaemonClient.run(socket,
+                        new String[] {"-t", "-1", inputFile.toString()}, new PrintStream(badOut), new PrintStream(badErr)));
+                ForkJoinTask<Boolean> good = pool.submit(() -> DaemonClient.run(socket,
+                        new String[] {"-p", "#", "9", inputFile.toString()}, new PrintStream(goodOut), new PrintStream(goodErr)));
+                Assertions.assertTrue(bad.get());
+                Assertions.assertFalse(good.get());
+            } finally {
+                pool.shutdown();
+            }
+
+            Assertions.assertEquals("", badOut.toString());
+            Assertions.assertEquals(usageStr, badErr.toString());
+            Assertions.assertEquals("##Test 87" + System.lineSeparator(), goodOut.toString());
+            Assertions.assertEquals("", goodErr.toString());
+        }
+        Assertions.assertEquals(input, getFileContent(inputFile));
+    }
+
+    @Test
+    // Engine API: one compiled job shared by many threads, status instead of flags
+    public void moditextTest88() throws Exception {
+        String sep = System.lineSeparator();
+        ModiText job = ModiText.compile(Arrays.asList("-f", "bold", "cat", "-k", "cat"));
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            files.add(createFile("cat " + i + sep + "dog " + i + sep, "input" + i + ".txt"));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(8);
+        try {
+            List<ForkJoinTask<String>> results = new ArrayList<>();
+            for (Path file : files) {
+                results.add(pool.submit(() -> {
+                    ByteArrayOutputStream output = new ByteArrayOutputStream();
+                    Assertions.assertEquals(ModiText.Status.OK, job.process(file, output));
+                    return output.toString();
+                }));
+            }
+            for (int i = 0; i < files.size(); i++) {
+                Assertions.assertEquals("**cat** " + i + sep, results.get(i).get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        Path noSeparator = createFile("cat", "partial.txt");
+        Assertions.assertEquals(ModiText.Status.INVALID_INPUT, job.process(noSeparator, new ByteArrayOutputStream()));
+        Path noMatch = createFile("dog" + sep, "dog.txt");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Assertions.assertEquals(ModiText.Status.OK, job.process(noMatch, output));
+        Assertions.assertEquals(sep, output.toString());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ModiText.compile(Arrays.asList("-t", "-1")));
+        Assertions.assertTrue(capture.stdout().isEmpty());
+        Assertions.assertTrue(capture.stderr().isEmpty());
+    }
+
+    @Test
+    // Batch: a directory and a glob, results concatenated in order or written per file
+    public void moditextTest89() throws IOException {
+        String sep = System.lineSeparator();
+        Path logs = Files.createDirectories(tempDirectory.resolve("logs/nested"));
+        Files.writeString(logs.resolve("b.txt"), "bb" + sep);
+        Files.writeString(logs.getParent().resolve("a.txt"), "a" + sep);
+        Files.writeString(logs.getParent().resolve("skip.log"), "skip" + sep);
+        Path single = createFile("single" + sep, "single.txt");
+
+        String[] args = {"-j", "2", "-p", "-", "3", "--", tempDirectory.resolve("logs").toString(), single.toString()};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        Assertions.assertTrue(Batch.run(Arrays.asList(args), new PrintStream(out), new PrintStream(err)));
+        Assertions.assertEquals("--a" + sep + "-bb" + sep + "single" + sep, out.toString());
+        Assertions.assertEquals("", err.toString());
+
+        Path outputs = tempDirectory.resolve("out");
+        String glob = tempDirectory.resolve("logs").toString() + "/**/*.txt";
+        args = new String[] {"-o", outputs.toString(), "-r", "--", glob};
+        out.reset();
+        Assertions.assertTrue(Batch.run(Arrays.asList(args), new PrintStream(out), new PrintStream(err)));
+        Assertions.assertEquals("", out.toString());
+        Assertions.assertEquals("bb" + sep, getFileContent(outputs.resolve("nested/b.txt")));
+
+        args = new String[] {"-t", "-1", "--", single.toString()};
+        Assertions.assertFalse(Batch.run(Arrays.asList(args), new PrintStream(out), new PrintStream(err)));
+        Assertions.assertEquals(usageStr, err.toString());
+    }
+
+    @Test
+    // Output writer: lines larger than its buffer, split multibyte chars and the println of no lines
+    public void moditextTest90() throws IOException {
+        String sep = System.lineSeparator();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        LineWriter writer = new LineWriter(Channels.newChannel(output), StandardCharsets.UTF_8, sep, 5);
+        writer.write("\u00e9t\u00e9 \u20ac\u20ac");
+        writer.write("ascii line".getBytes(StandardCharsets.US_ASCII), 0, 5);
+        writer.write("");
+        writer.finish();
+        Assertions.assertEquals("\u00e9t\u00e9 \u20ac\u20ac" + sep + "ascii" + sep + sep, output.toString(StandardCharsets.UTF_8));
+
+        output.reset();
+        new LineWriter(Channels.newChannel(output), StandardCharsets.UTF_8, sep, 5).finish();
+        Assertions.assertEquals(sep, output.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    // -o: the result goes to the output file instead of stdout
+    public void moditextTest91() {
+        String input = "alpha" + System.lineSeparator() + "beta" + System.lineSeparator();
+        String expected = "beta" + System.lineSeparator() + "alpha" + System.lineSeparator();
+
+        Path inputFile = createFile(input);
+        Path outputFile = tempDirectory.resolve("result.out");
+        String[] args = {"-r", "-o", outputFile.toString(), inputFile.toString()};
+        Main.main(args);
+
+        Assertions.assertTrue(capture.stdout().isEmpty());
+        Assertions.assertTrue(capture.stderr().isEmpty());
+        Assertions.assertEquals(expected, getFileContent(outputFile));
+        Assertions.assertEquals(input, getFileContent(inputFile));
+    }
+
+    @Test
+    // -i: the input file is replaced by the result, and left alone on errors
+    public void moditextTest92() throws IOException {
+        String input = "alpha" + System.lineSeparator() + "beta" + System.lineSeparator();
+        String expected = "**alpha**" + System.lineSeparator();
+
+        Path inputFile = createFile(input);
+        String[] args = {"-i", "-k", "alpha", "-f", "bold", "alpha", inputFile.toString()};
+        Main.main(args);
+
+        Assertions.assertTrue(capture.stdout().isEmpty());
+        Assertions.assertTrue(capture.stderr().isEmpty());
+        Assertions.assertEquals(expected, getFileContent(inputFile));
+        try (Stream<Path> files = Files.list(tempDirectory)) {
+            Assertions.assertEquals(1, files.count());
+        }
+
+        Path partial = createFile("no separator", "partial.txt");
+        Main.main(new String[] {"-i", "-r", partial.toString()});
+        Assertions.assertEquals("no separator", getFileContent(partial));
+        Main.main(new String[] {"-i", "-o", "other.txt", inputFile.toString()});
+        Assertions.assertEquals(usageStr + usageStr, capture.stderr());
+        Assertions.assertEquals(expected, getFileContent(inputFile));
+    }
+
+    @Test
+    // -: the text is read from stdin, and checked for the trailing separator at its end
+    public void moditextTest93() {
+        String input = "one" + System.lineSeparator() + "two" + System.lineSeparator();
+        String expected = "**o**ne" + System.lineSeparator() + "tw**o**" + System.lineSeparator();
+
+        InputStream stdin = System.in;
+        try {
+            System.setIn(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+            Main.main(new String[] {"-f", "bold", "o", "-"});
+            Assertions.assertEquals(expected, capture.stdout());
+            Assertions.assertTrue(capture.stderr().isEmpty());
+
+            System.setIn(new ByteArrayInputStream("no separator".getBytes(StandardCharsets.UTF_8)));
+            Main.main(new String[] {"-t", "2", "-"});
+            Assertions.assertTrue(Main.errorStat);
+            Assertions.assertEquals(usageStr, capture.stderr());
+        } finally {
+            System.setIn(stdin);
+        }
+    }
+
+    @Test
+    // .txt.gz: compressed input is read as a stream, and a .gz -o target is compressed
+    public void moditextTest94() throws IOException {
+        String input = "gamma" + System.lineSeparator() + "delta" + System.lineSeparator();
+        String expected = "delta" + System.lineSeparator() + "gamma" + System.lineSeparator();
+
+        Path inputFile = tempDirectory.resolve("input.txt.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(inputFile))) {
+            out.write(input.getBytes(StandardCharsets.UTF_8));
+        }
+        Main.main(new String[] {"-r", inputFile.toString()});
+        Assertions.assertEquals(expected, capture.stdout());
+        Assertions.assertTrue(capture.stderr().isEmpty());
+
+        Path outputFile = tempDirectory.resolve("output.txt.gz");
+        Main.main(new String[] {"-r", "-o", outputFile.toString(), inputFile.toString()});
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(outputFile))) {
+            Assertions.assertEquals(expected, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        Assertions.assertEquals(expected, capture.stdout());
+        Assertions.assertTrue(capture.stderr().isEmpty());
+    }
+
+    @Test
+    // --stats: counters from the engine, and the report on stderr or in a JSON file
+    public void moditextTest95() throws IOException {
+        String sep = System.lineSeparator();
+        String input = "hello world" + sep + "foo" + sep + sep + "needle bar needle" + sep;
+        Path inputFile = createFile(input);
+
+        Stats stats = new Stats();
+        ModiText job = ModiText.compile(Arrays.asList("-k", "e", "-p", "#", "12", "-g", "-f", "bold", "e"));
+        Assertions.assertEquals(ModiText.Status.OK, job.process(inputFile, new ByteArrayOutputStream(), stats));
+        Assertions.assertEquals(4, stats.linesIn());
+        Assertions.assertEquals(2, stats.linesOut());
+        Assertions.assertEquals(3, stats.keepIn());
+        Assertions.assertEquals(2, stats.keepOut());
+        Assertions.assertEquals(1, stats.padded());
+        Assertions.assertEquals(0, stats.truncated());
+        Assertions.assertEquals(7, stats.replacements());
+        Assertions.assertEquals(input.length(), stats.bytesRead());
+        Assertions.assertTrue(stats.totalNanos() > 0);
+
+        Main.main(new String[] {"--stats", "-t", "3", inputFile.toString()});
+        Assertions.assertEquals("hel" + sep + "foo" + sep + sep + "nee" + sep, capture.stdout());
+        Assertions.assertTrue(capture.stderr().startsWith("moditext stats" + sep));
+        Assertions.assertTrue(capture.stderr().contains("2 truncated"));
+
+        Path json = tempDirectory.resolve("stats.json");
+        Main.main(new String[] {"-r", "--stats=" + json, inputFile.toString()});
+        Assertions.assertTrue(getFileContent(json).startsWith("{\"linesIn\":4,\"linesOut\":4,"));
+        Assertions.assertFalse(Main.errorStat);
+    }
+
+    @Test
+    @Timeout(10)
+    // Flight recorder events: off by default, recorded with counts once a recording enables them
+    public void moditextTest96() throws IOException {
+        String sep = System.lineSeparator();
+        String input = "hello world" + sep + "foo" + sep + sep + "needle bar needle" + sep;
+        Path inputFile = createFile(input);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        Path dump = tempDirectory.resolve("moditext.jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : new String[] {"Compile", "Read", "Stage", "Flush", "Process"}) {
+                recording.enable("moditext." + name);
+            }
+            recording.start();
+            ModiText job = ModiText.compile(Arrays.asList("-k", "e", "-p", "#", "12"));
+            Assertions.assertEquals(ModiText.Status.OK, job.process(inputFile, output));
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        RecordedEvent process = only(events, "moditext.Process");
+        Assertions.assertEquals("OK", process.getString("status"));
+        Assertions.assertEquals(4, process.getLong("linesIn"));
+        Assertions.assertEquals(2, process.getLong("linesOut"));
+        Assertions.assertEquals(input.length(), process.getLong("bytesRead"));
+        Assertions.assertEquals(output.size(), process.getLong("bytesWritten"));
+        Assertions.assertEquals(output.size(), only(events, "moditext.Flush").getLong("bytes"));
+        Assertions.assertTrue(only(events, "moditext.Compile").getBoolean("valid"));
+        Assertions.assertTrue(events.stream().anyMatch(event -> event.getEventType().getName().equals("moditext.Read")));
+
+        long[] stages = events.stream().filter(event -> event.getEventType().getName().equals("moditext.Stage"))
+                .flatMapToLong(event -> LongStream.of(event.getLong("linesIn"), event.getLong("linesOut")))
+                .toArray();
+        Assertions.assertArrayEquals(new long[] {3, 2, 2, 2}, stages);
+    }
+
+    private static RecordedEvent only(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> named = new ArrayList<>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                named.add(event);
+            }
+        }
+        Assertions.assertEquals(1, named.size(), name);
+        return named.get(0);
+    }
+
+    @Test
+    // --follow: only complete lines are processed, appends are read from where the last read stopped
+    public void moditextTest97() throws IOException {
+        String sep = System.lineSeparator();
+        Path inputFile = createFile("alpha" + sep + "beta" + sep + "gam");
+        Pipeline pipeline = Pipeline.compile(Arrays.asList("-k", "a", "-p", "#", "6"));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Stats stats = new Stats();
+        Follower follower = new Follower(pipeline, inputFile, sep, output, stats, Follower.POLL_MILLIS);
+
+        follower.readAppended();
+        Assertions.assertEquals("#alpha" + sep + "##beta" + sep, output.toString(StandardCharsets.UTF_8));
+
+        Files.writeString(inputFile, "ma" + sep + "delta" + sep + "xyz", StandardOpenOption.APPEND);
+        follower.readAppended();
+        Assertions.assertEquals("#alpha" + sep + "##beta" + sep + "#gamma" + sep + "#delta" + sep,
+                output.toString(StandardCharsets.UTF_8));
+        Assertions.assertEquals(4, stats.linesIn());
+
+        // Truncated, the new content is read from the start
+        output.reset();
+        Files.writeString(inputFile, "kappa" + sep);
+        follower.readAppended();
+        Assertions.assertEquals("#kappa" + sep, output.toString(StandardCharsets.UTF_8));
+
+        // Rotated, the new file is read from the start even though it is longer
+        output.reset();
+        Files.move(inputFile, tempDirectory.resolve("rotated.txt"));
+        follower.readAppended();
+        Files.writeString(inputFile, "lambda" + sep + "omega" + sep);
+        follower.readAppended();
+        Assertions.assertEquals("lambda" + sep + "#omega" + sep, output.toString(StandardCharsets.UTF_8));
+
+        Main.main(new String[] {"--follow", "-r", inputFile.toString()});
+        Assertions.assertEquals(usageStr, capture.stderr());
+        Assertions.assertTrue(ModiText.compile(Arrays.asList("-k", "a", "--follow", "--stats")).follows());
+    }
+
+    @Test
+    // --cache=DIR: an unchanged file is served from the cache, a changed one runs again
+    public void moditextTest98() throws IOException {
+        String sep = System.lineSeparator();
+        Path inputFile = createFile("alpha" + sep + "beta" + sep);
+        Path cacheDirectory = tempDirectory.resolve("cache");
+        ModiText job = ModiText.compile(Arrays.asList("-k", "a", "-f", "code", "a", "--cache=" + cacheDirectory));
+
+        Stats miss = new Stats();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Assertions.assertEquals(ModiText.Status.OK, job.process(inputFile, output, miss));
+        Assertions.assertEquals("`a`lpha" + sep + "bet`a`" + sep, output.toString(StandardCharsets.UTF_8));
+        Assertions.assertEquals(2, miss.linesIn());
+
+        Stats hit = new Stats();
+        output.reset();
+        Assertions.assertEquals(ModiText.Status.OK, job.process(inputFile, output, hit));
+        Assertions.assertEquals("`a`lpha" + sep + "bet`a`" + sep, output.toString(StandardCharsets.UTF_8));
+        Assertions.assertEquals(0, hit.linesIn());
+
+        Files.writeString(inputFile, "gamma" + sep);
+        Main.main(new String[] {"-k", "a", "-f", "code", "a", "--cache=" + cacheDirectory, inputFile.toString()});
+        Assertions.assertEquals("g`a`mma" + sep, capture.stdout());
+
+        // Other options are another entry, an empty result is cached as empty
+        Main.main(new String[] {"-k", "zzzzzzzzzzzzzzzzzzzzz", "--cache=" + cacheDirectory, inputFile.toString()});
+        Main.main(new String[] {"-k", "zzzzzzzzzzzzzzzzzzzzz", "--cache=" + cacheDirectory, inputFile.toString()});
+        Assertions.assertEquals("g`a`mma" + sep, capture.stdout());
+        Assertions.assertTrue(Main.emptyOutput);
+
+        // Under a cap of one byte the older entries are evicted
+        ResultCache small = new ResultCache(cacheDirectory, "small", 1);
+        small.process(inputFile, Channels.newChannel(new ByteArrayOutputStream()),
+                channel -> ModiText.Status.EMPTY);
+        long cached = 0;
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.toString().endsWith(".out") || file.toString().endsWith(".stat")) {
+                    cached += Files.size(file);
+                }
+            }
+        }
+        Assertions.assertTrue(cached <= 1);
+
+        Main.main(new String[] {"--cache", "-r", inputFile.toString()});
+        Assertions.assertEquals(usageStr, capture.stderr());
+    }
+
+    @Test
+    // --lines and --index: a FILE.idx sidecar of line offsets, used for ranges, -r and cutting chunks
+    public void moditextTest99() throws IOException {
+        String sep = System.lineSeparator();
+        StringBuilder input = new StringBuilder();
+        for (int i = 1; i <= 100; i++) {
+            input.append("row ").append(i).append(sep);
+        }
+        Path inputFile = createFile(input.toString());
+        Path sidecar = LineIndex.sidecar(inputFile);
+
+        Main.main(new String[] {"--lines=98-200", "-f", "bold", "row", inputFile.toString()});
+        Assertions.assertEquals("**row** 98" + sep + "**row** 99" + sep + "**row** 100" + sep, capture.stdout());
+        Assertions.assertTrue(Files.exists(sidecar));
+
+        // The sidecar is read back, and built again once the file changes
+        try (FileChannel channel = FileChannel.open(inputFile)) {
+            LineIndex index = LineIndex.open(inputFile, channel, sep);
+            Assertions.assertEquals(100, index.lines());
+            Assertions.assertEquals(("row 1" + sep).length(), index.start(1));
+        }
+        Files.writeString(inputFile, "a" + sep + sep + "b" + sep);
+        Main.main(new String[] {"--lines=2-", "-r", "--index", inputFile.toString()});
+        Assertions.assertEquals("**row** 98" + sep + "**row** 99" + sep + "**row** 100" + sep + "b" + sep + sep,
+                capture.stdout());
+
+        List<String> lines = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(inputFile)) {
+            LineIndex index = LineIndex.open(inputFile, channel, sep);
+            LineSource source = new IndexedReverseReader(channel, index, sep, 0, index.lines(), channel.size(), 1);
+            for (String line = source.readLine(); line != null; line = source.readLine()) {
+                lines.add(0, line);
+            }
+            Assertions.assertEquals(Arrays.asList("a", "", "b", ""), lines);
+            Assertions.assertEquals(("a" + sep + sep + "b" + sep).length(), source.charsRead());
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ForkJoinPool pool = new ForkJoinPool(2);
+            try {
+                ParallelRunner runner = new ParallelRunner(Pipeline.compile(Arrays.asList("-p", "#", "3")), channel, sep, pool, 1, index);
+                Assertions.assertTrue(runner.run(new LineWriter(Channels.newChannel(output), StandardCharsets.UTF_8, sep), new Stats()));
+            } finally {
+                pool.shutdown();
+            }
+            Assertions.assertEquals("##a" + sep + "###" + sep + "##b" + sep, output.toString(StandardCharsets.UTF_8));
+        }
+
+        Main.main(new String[] {"--lines=3-2", "-r", inputFile.toString()});
+        Assertions.assertEquals(usageStr, capture.stderr());
+    }
+
+    @Test
+    // --trigrams: a FILE.tri sidecar of trigram postings per block, so -k skips blocks that cannot match
+    public void moditextTest100() throws IOException {
+        String sep = System.lineSeparator();
+        String input = "alpha" + sep + sep + "needle one" + sep + "beta" + sep + "gamma" + sep + "a needle" + sep;
+        Path inputFile = createFile(input);
+
+        Main.main(new String[] {"-k", "ne", "--trigrams", inputFile.toString()});
+        Assertions.assertFalse(Files.exists(TrigramIndex.sidecar(inputFile)));
+        Main.main(new String[] {"-k", "needle", "-r", "--trigrams", inputFile.toString()});
+        Assertions.assertTrue(Files.exists(TrigramIndex.sidecar(inputFile)));
+        Assertions.assertEquals("needle one" + sep + "a needle" + sep + "a needle" + sep + "needle one" + sep,
+                capture.stdout());
+
+        try (FileChannel channel = FileChannel.open(inputFile)) {
+            // One line per block
+            TrigramIndex index = TrigramIndex.build(channel, sep, 1);
+            Assertions.assertEquals(6, index.blocks());
+            Assertions.assertEquals(input.length(), index.chars());
+            Pipeline pipeline = Pipeline.compile(Arrays.asList("-k", "needle", "-k", "gamma", "-p", "*", "9"));
+            Assertions.assertEquals(BitSet.valueOf(new long[] {0b110100}), index.candidates(pipeline.keepSubstrings()));
+
+            Stats stats = new Stats();
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            LineWriter writer = new LineWriter(Channels.newChannel(output), StandardCharsets.UTF_8, sep);
+            Assertions.assertTrue(pipeline.runBlocks(channel, sep, index, index.candidates(pipeline.keepSubstrings()), writer, stats));
+            Assertions.assertEquals("needle one" + sep + "****gamma" + sep + "*a needle" + sep, output.toString(StandardCharsets.UTF_8));
+            Assertions.assertEquals(6, stats.linesIn());
+            Assertions.assertEquals(3, stats.keepIn());
+        }
+    }
+
+    @Test
+    // Byte searches eight bytes at a time, checked against a plain loop at every offset and length
+    public void moditextTest101() {
+        byte[] bytes = "ab\nc\r\n\u00e9x\r\r\nyz\n\n\rq\r\n".getBytes(StandardCharsets.UTF_8);
+        byte[][] patterns = {{'\n'}, {'\r', '\n'}, {'\r'}, {'z', '\n'}, {(byte) 0xc3}, {'q', '\r', '\n'}, {'w'}};
+        java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocateDirect(bytes.length).put(bytes);
+        for (int from = 0; from <= bytes.length; from++) {
+            for (int to = from; to <= bytes.length; to++) {
+                boolean ascii = true;
+                for (int i = from; i < to; i++) {
+                    ascii &= bytes[i] >= 0;
+                }
+                Assertions.assertEquals(ascii, ByteScan.isAscii(bytes, from, to));
+                for (byte[] pattern : patterns) {
+                    int expected = -1;
+                    for (int i = from; i + pattern.length <= to && expected < 0; i++) {
+                        if (Arrays.equals(bytes, i, i + pattern.length, pattern, 0, pattern.length)) {
+                            expected = i;
+                        }
+                    }
+                    Assertions.assertEquals(expected, ByteScan.indexOf(bytes, from, to, pattern));
+                    Assertions.assertEquals(expected, ByteScan.indexOf(buffer, from, to, pattern));
+                }
+            }
+        }
+
+    }
+
+    @Test
+    // Lines as offsets into the content: cut like split, and the helpers give what they gave on String[]
+    public void moditextTest102() {
+        String[] contents = {"", "a", "\n", "\n\n", "a\n", "\na", "a\n\nb\n\n", "a\r\nb\r\n\r\n", "x|y||", "abc"};
+        for (String separator : new String[] {"\n", "\r\n", "\r", "ab"}) {
+            for (String content : contents) {
+                LineSlices lines = LineSlices.of(content, separator);
+                String[] sliced = new String[lines.size()];
+                for (int i = 0; i < lines.size(); i++) {
+                    sliced[i] = lines.appendTo(new StringBuilder(), i).toString();
+                    Assertions.assertEquals(sliced[i].length(), lines.length(i));
+                }
+                Assertions.assertArrayEquals(content.split(separator), sliced);
+            }
+        }
+
+        String sep = System.lineSeparator();
+        java.util.Random random = new java.util.Random(24);
+        String[] atoms = {"a", "b", "ab", " ", sep, sep, "\u00e9"};
+        for (int run = 0; run < 2000; run++) {
+            StringBuilder content = new StringBuilder();
+            for (int i = random.nextInt(20); i > 0; i--) {
+                content.append(atoms[random.nextInt(atoms.length)]);
+            }
+            String text = content.toString();
+            String[] split = text.split(sep);
+
+            String substring = new String[] {"", "a", "ab", "b b"}[random.nextInt(4)];
+            List<String> kept = new ArrayList<>();
+            for (String line : split) {
+                // Empty lines are only kept once something is in the result
+                if (line.contains(substring) && !(kept.isEmpty() && line.isEmpty())) {
+                    kept.add(line);
+                }
+            }
+            Assertions.assertEquals(substring.length() > text.length() ? "" : String.join(sep, kept),
+                    Main.keepLines(text, substring));
+
+            int num = random.nextInt(4);
+            List<String> padded = new ArrayList<>();
+            List<String> trimmed = new ArrayList<>();
+            for (String line : split) {
+                padded.add("#".repeat(Math.max(0, num - line.length())) + line);
+                trimmed.add(line.length() > num ? line.substring(0, num) : line);
+            }
+            Assertions.assertEquals(String.join(sep, padded), Main.padBeginning(text, '#', num));
+            Assertions.assertEquals(String.join(sep, trimmed), Main.trimLines(text, num));
+
+            List<String> reversed = new ArrayList<>(Arrays.asList(split));
+            java.util.Collections.reverse(reversed);
+            Assertions.assertEquals(String.join(sep, reversed), Main.reverseLines(text));
+
+            boolean global = random.nextBoolean();
+            List<String> formatted = new ArrayList<>();
+            for (String line : split) {
+                formatted.add(global ? line.replace("a", "`a`") : line.replaceFirst("a", "`a`"));
+            }
+            Assertions.assertEquals(String.join(sep, formatted), Main.formatText(text, "code", "a", global));
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    // Keep, pad, trim and format write into buffers the caller keeps, so a line allocates next to nothing
+    public void moditextTest103() throws IOException {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        org.junit.jupiter.api.Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        String sep = System.lineSeparator();
+        Pipeline padding = Pipeline.compile(Arrays.asList("-k", "a", "-p", "*", "40", "-g", "-f", "bold", "a"));
+        Pipeline trimming = Pipeline.compile(Arrays.asList("-k", "a", "-t", "22", "-f", "bold", "a"));
+        String line = "caf\u00e9 au lait and a caf\u00e9 noir";
+        byte[] ascii = "a plain line of ascii text".getBytes(StandardCharsets.US_ASCII);
+        StringBuilder stage = new StringBuilder();
+        StringBuilder result = new StringBuilder();
+        ByteLine byteStage = new ByteLine();
+        ByteLine byteResult = new ByteLine();
+        Stats stats = new Stats();
+        LineWriter writer = new LineWriter(Channels.newChannel(OutputStream.nullOutputStream()), StandardCharsets.UTF_8, sep);
+
+        Assertions.assertEquals("************c**a**f\u00e9 **a**u l**a**it **a**nd **a** c**a**f\u00e9 noir",
+                padding.apply(line, stage, result, stats).toString());
+        Assertions.assertEquals("c**a**f\u00e9 au lait and a caf", trimming.apply(line, stage, result, stats).toString());
+        Assertions.assertSame(line, Pipeline.compile(Arrays.asList("-p", "*", "9")).apply(line, stage, result, stats));
+        Assertions.assertTrue(padding.applyAscii(ascii, 0, ascii.length, byteStage, byteResult, stats));
+        Assertions.assertEquals("**************" + "**a** pl**a**in line of **a**scii text",
+                new String(byteResult.bytes, 0, byteResult.length, StandardCharsets.US_ASCII));
+
+        Pipeline[] pipelines = {padding, trimming};
+        int lines = 20_000;
+        long allocated = 0;
+        // The first rounds are for the JIT, the last one is measured
+        for (int round = 0; round < 3; round++) {
+            long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            for (int i = 0; i < lines; i++) {
+                for (Pipeline pipeline : pipelines) {
+                    writer.write(pipeline.apply(line, stage, result, stats));
+                    pipeline.applyAscii(ascii, 0, ascii.length, byteStage, byteResult, stats);
+                    writer.write(byteResult.bytes, 0, byteResult.length);
+                }
+            }
+            allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        }
+        Assertions.assertTrue(allocated < lines, allocated + " bytes allocated for " + 4 * lines + " lines");
+    }
+
+    @Test
+    // A job that cannot read its input ends with the usage message and errorStat, a bug is not hidden behind it
+    public void moditextTest104() {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("stdin is gone");
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        Job job = new Job(failing, new PrintStream(out, true), new PrintStream(err, true));
+        job.run(new String[] {"-k", "a", "-"});
+        Assertions.assertTrue(job.errorStat);
+        Assertions.assertEquals("", out.toString());
+        Assertions.assertEquals(usageStr, err.toString());
+
+        InputStream broken = new InputStream() {
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException("stdin is gone");
+            }
+        };
+        Job bug = new Job(broken, new PrintStream(out, true), new PrintStream(err, true));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> bug.run(new String[] {"-k", "a", "-"}));
+        Assertions.assertEquals(usageStr, err.toString());
+    }
+
+    @Test
+    // Batch -o: a failed file leaves its output alone, and two files with the same output name are an error
+    public void moditextTest105() throws IOException {
+        String sep = System.lineSeparator();
+        Path outputs = Files.createDirectories(tempDirectory.resolve("out"));
+        Path a = Files.createDirectories(tempDirectory.resolve("a")).resolve("x.txt");
+        Path b = Files.createDirectories(tempDirectory.resolve("b")).resolve("x.txt");
+        Files.writeString(a, "from a" + sep);
+        Files.writeString(b, "from b" + sep);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        String[] args = {"-o", outputs.toString(), "-r", "--", a.toString(), b.toString()};
+        Assertions.assertFalse(Batch.run(Arrays.asList(args), new PrintStream(out), new PrintStream(err)));
+        Assertions.assertTrue(err.toString().contains("both write x.txt"));
+        Assertions.assertFalse(Files.exists(outputs.resolve("x.txt")));
+
+        // The same file twice is not a clash
+        err.reset();
+        args = new String[] {"-o", outputs.toString(), "-r", "--", a.toString(), a.toString()};
+        Assertions.assertTrue(Batch.run(Arrays.asList(args), new PrintStream(out), new PrintStream(err)));
+        Assertions.assertEquals("from a" + sep, getFileContent(outputs.resolve("x.txt")));
+
+        Path invalid = createFile("no separator at the end", "bad.txt");
+        Files.writeString(outputs.resolve("bad.txt"), "keep");
+        args = new String[] {"-o", outputs.toString(), "-r", "--", invalid.toString(),
+                tempDirectory.resolve("missing.txt").toString()};
+        Assertions.assertFalse(Batch.run(Arrays.asList(args), new PrintStream(out), new PrintStream(err)));
+        String[] failures = err.toString().split(System.lineSeparator());
+        Assertions.assertEquals(2, failures.length);
+        Assertions.assertEquals(invalid + ": " + usageStr, failures[0] + System.lineSeparator());
+        Assertions.assertTrue(failures[1].startsWith(tempDirectory.resolve("missing.txt") + ": "));
+        Assertions.assertTrue(failures[1].contains("NoSuchFileException"));
+        Assertions.assertEquals("keep", getFileContent(outputs.resolve("bad.txt")));
+        Assertions.assertFalse(Files.exists(outputs.resolve("missing.txt")));
+        try (Stream<Path> left = Files.list(outputs)) {
+            Assertions.assertEquals(2, left.count());
+        }
+        Assertions.assertEquals("", out.toString());
+    }
+
+    @Test
+    // -o and -i are only options where they stand as options, as a -k or -f parameter they are text
+    public void moditextTest106() throws IOException {
+        String sep = System.lineSeparator();
+        String input = "a -i line" + sep + "an -o line" + sep + "plain a" + sep;
+        Path inputFile = createFile(input);
+
+        String expected = "**a** -i line" + sep;
+        Main.main(new String[] {"-k", "-i", "-f", "bold", "a", inputFile.toString()});
+        Assertions.assertEquals(expected, capture.stdout());
+        Assertions.assertEquals(input, getFileContent(inputFile));
+
+        Main.main(new String[] {"-k", "-o", inputFile.toString()});
+        expected += "an -o line" + sep;
+        Assertions.assertEquals(expected, capture.stdout());
+
+        Main.main(new String[] {"-f", "bold", "-o", inputFile.toString()});
+        expected += "a -i line" + sep + "an **-o** line" + sep + "plain a" + sep;
+        Assertions.assertEquals(expected, capture.stdout());
+
+        Path outputFile = tempDirectory.resolve("out.txt");
+        Main.main(new String[] {"-f", "bold", "-i", "-o", outputFile.toString(), inputFile.toString()});
+        Assertions.assertEquals("a **-i** line" + sep + "an -o line" + sep + "plain a" + sep, getFileContent(outputFile));
+        Assertions.assertEquals(input, getFileContent(inputFile));
+
+        Main.main(new String[] {"-k", "-i", "-i", inputFile.toString()});
+        Assertions.assertEquals("a -i line" + sep, getFileContent(inputFile));
+        Assertions.assertEquals("", capture.stderr());
+        Assertions.assertFalse(Main.errorStat);
+    }
+
+    @Test
+    public void moditextTest107() throws IOException {
+        String sep = System.lineSeparator();
+        String input = "run --stats" + sep + "run" + sep;
+        Path inputFile = createFile(input);
+
+        Main.main(new String[] {"-k", "--stats", inputFile.toString()});
+        Assertions.assertEquals("run --stats" + sep, capture.stdout());
+        Assertions.assertEquals("", capture.stderr());
+
+        Path statsFile = tempDirectory.resolve("stats.json");
+        Main.main(new String[] {"-k", "--stats", "--stats=" + statsFile, inputFile.toString()});
+        Assertions.assertEquals("run --stats" + sep + "run --stats" + sep, capture.stdout());
+        Assertions.assertTrue(Files.exists(statsFile));
+        Assertions.assertEquals("", capture.stderr());
+        Assertions.assertFalse(Main.errorStat);
+    }
+
+    @Test
+    public void moditextTest108() throws IOException {
+        String sep = System.lineSeparator();
+        Path inputFile = createFile("tail --follow" + sep + "tail" + sep);
+
+        Main.main(new String[] {"-k", "--follow", inputFile.toString()});
+        Assertions.assertEquals("tail --follow" + sep, capture.stdout());
+        Assertions.assertEquals("", capture.stderr());
+        Assertions.assertFalse(Main.errorStat);
+
+        Assertions.assertFalse(ModiText.compile(Arrays.asList("-k", "--follow")).follows());
+        Assertions.assertTrue(ModiText.compile(Arrays.asList("-k", "-r", "--follow")).follows());
+        Assertions.assertTrue(ModiText.compile(Arrays.asList("-f", "code", "-o", "--follow")).follows());
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> ModiText.compile(Arrays.asList("-r", "-k", "--follow", "--follow")));
+    }
+
+    @Test
+    public void moditextTest109() throws IOException {
+        String sep = System.lineSeparator();
+        Path inputFile = createFile("--cache on" + sep + "off" + sep);
+
+        Main.main(new String[] {"-k", "--cache", inputFile.toString()});
+        Assertions.assertEquals("--cache on" + sep, capture.stdout());
+        Assertions.assertEquals("", capture.stderr());
+
+        Path cacheDirectory = tempDirectory.resolve("cache");
+        ModiText job = ModiText.compile(Arrays.asList("-k", "--cache", "--cache=" + cacheDirectory));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        job.process(inputFile, output, new Stats());
+        Stats hit = new Stats();
+        output.reset();
+        Assertions.assertEquals(ModiText.Status.OK, job.process(inputFile, output, hit));
+        Assertions.assertEquals("--cache on" + sep, output.toString(StandardCharsets.UTF_8));
+        Assertions.assertEquals(0, hit.linesIn());
+    }
+
+    @Test
+    public void moditextTest110() throws IOException {
+        String sep = System.lineSeparator();
+        Path inputFile = createFile("read --index" + sep + "read" + sep + "read --lines=2-2" + sep + "--lines" + sep);
+
+        Main.main(new String[] {"-k", "--index", inputFile.toString()});
+        String expected = "read --index" + sep;
+        Assertions.assertEquals(expected, capture.stdout());
+        Assertions.assertFalse(Files.exists(LineIndex.sidecar(inputFile)));
+
+        Main.main(new String[] {"-k", "--lines=2-2", inputFile.toString()});
+        expected += "read --lines=2-2" + sep;
+        Assertions.assertEquals(expected, capture.stdout());
+
+        Main.main(new String[] {"-k", "--lines", inputFile.toString()});
+        expected += "read --lines=2-2" + sep + "--lines" + sep;
+        Assertions.assertEquals(expected, capture.stdout());
+
+        Main.main(new String[] {"-k", "--lines", "--lines=3-4", inputFile.toString()});
+        expected += "read --lines=2-2" + sep + "--lines" + sep;
+        Assertions.assertEquals(expected, capture.stdout());
+        Assertions.assertEquals("", capture.stderr());
+        Assertions.assertFalse(Main.errorStat);
+    }
+
+    @Test
+    public void moditextTest111() throws IOException {
+        String sep = System.lineSeparator();
+        Path inputFile = createFile("grep --trigrams" + sep + "grep" + sep);
+
+        Main.main(new String[] {"-k", "--trigrams", inputFile.toString()});
+        Assertions.assertEquals("grep --trigrams" + sep, capture.stdout());
+        Assertions.assertFalse(Files.exists(TrigramIndex.sidecar(inputFile)));
+
+        Main.main(new String[] {"-k", "--trigrams", "--trigrams", inputFile.toString()});
+        Assertions.assertEquals("grep --trigrams" + sep + "grep --trigrams" + sep, capture.stdout());
+        Assertions.assertTrue(Files.exists(TrigramIndex.sidecar(inputFile)));
+        Assertions.assertEquals("", capture.stderr());
+        Assertions.assertFalse(Main.errorStat);
+    }
+
+    @Test
+    // Batch: the job's own -o FILE would take every result and is an error, -i edits every file
+    public void moditextTest112() throws IOException {
+        String sep = System.lineSeparator();
+        Path a = createFile("one" + sep + "two" + sep, "a.txt");
+        Path b = Files.createDirectories(tempDirectory.resolve("sub")).resolve("b.txt");
+        Files.writeString(b, "four" + sep + "five" + sep);
+        Path single = tempDirectory.resolve("one.txt");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        String[] args = {"-k", "o", "-o", single.toString(), "--", a.toString(), b.toString()};
+        Assertions.assertFalse(Batch.run(Arrays.asList(args), new PrintStream(out), new PrintStream(err)));
+        Assertions.assertTrue(err.toString().contains("-o FILE"));
+        Assertions.assertFalse(Files.exists(single));
+
+        err.reset();
+        args = new String[] {"-k", "o", "-i", "--", a.toString(), b.toString()};
+        Assertions.assertTrue(Batch.run(Arrays.asList(args), new PrintStream(out), new PrintStream(err)));
+        Assertions.assertEquals("one" + sep + "two" + sep, getFileContent(a));
+        Assertions.assertEquals("four" + sep, getFileContent(b));
+        Assertions.assertEquals("", err.toString());
+        Assertions.assertEquals("", out.toString());
+    }
+
+    @Test
+    // A compressed file without a separator at the end prints only the usage message, as a plain file does
+    public void moditextTest113() throws IOException {
+        String sep = System.lineSeparator();
+        Path inputFile = tempDirectory.resolve("open.txt.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(inputFile))) {
+            out.write(("a" + sep + "b" + sep + "c").getBytes(StandardCharsets.UTF_8));
+        }
+        Main.main(new String[] {"-r", inputFile.toString()});
+        Assertions.assertEquals("", capture.stdout());
+        Assertions.assertEquals(usageStr, capture.stderr());
+
+        Path closedFile = tempDirectory.resolve("closed.txt.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(closedFile))) {
+            out.write(("a" + sep + "b" + sep).getBytes(StandardCharsets.UTF_8));
+        }
+        Main.main(new String[] {"-k", "b", closedFile.toString()});
+        Assertions.assertEquals("b" + sep, capture.stdout());
+    }
+
+    @Test
+    // -r holds every line to the end, a stream without a separator there prints only the usage message
+    public void moditextTest114() throws IOException {
+        String sep = System.lineSeparator();
+        ModiText job = ModiText.compile(Arrays.asList("-r"));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        InputStream open = new ByteArrayInputStream(("a" + sep + "b" + sep + "c").getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(ModiText.Status.INVALID_INPUT, job.process(open, output));
+        Assertions.assertEquals("", output.toString(StandardCharsets.UTF_8));
+
+        job = ModiText.compile(Arrays.asList("-r", "-f", "code", "\u00e9"));
+        open = new ByteArrayInputStream(("\u00e9" + sep + "b").getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(ModiText.Status.INVALID_INPUT, job.process(open, output));
+        Assertions.assertEquals("", output.toString(StandardCharsets.UTF_8));
+
+        InputStream closed = new ByteArrayInputStream(("a" + sep + "b" + sep).getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(ModiText.Status.OK, ModiText.compile(Arrays.asList("-r")).process(closed, output));
+        Assertions.assertEquals("b" + sep + "a" + sep, output.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    // Daemon: only a socket nobody answers on is replaced, a file or a running daemon's socket is an error
+    public void moditextTest115() throws Exception {
+        Path notSocket = createFile("keep me", "daemon.sock");
+        IOException notASocket = Assertions.assertThrows(IOException.class, () -> new Daemon(notSocket, 1));
+        Assertions.assertTrue(notASocket.getMessage().contains("not a socket"));
+        Assertions.assertEquals("keep me", getFileContent(notSocket));
+
+        // A closed server channel leaves its socket file behind, as a killed daemon does
+        Path socket = tempDirectory.resolve("stale.sock");
+        ServerSocketChannel.open(StandardProtocolFamily.UNIX).bind(UnixDomainSocketAddress.of(socket)).close();
+        Assertions.assertTrue(Files.exists(socket));
+        try (Daemon daemon = new Daemon(socket, 1)) {
+            Thread server = new Thread(() -> {
+                try {
+                    daemon.serve();
+                } catch (IOException e) {
+                    // closed by the test
+                }
+            });
+            server.setDaemon(true);
+            server.start();
+
+            IOException running = Assertions.assertThrows(IOException.class, () -> new Daemon(socket, 1));
+            Assertions.assertTrue(running.getMessage().contains("already serving"));
+
+            Path inputFile = createFile("still served" + System.lineSeparator());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            Assertions.assertFalse(DaemonClient.run(socket, new String[] {"-k", "still", inputFile.toString()},
+                    new PrintStream(out), new PrintStream(err)));
+            Assertions.assertEquals("still served" + System.lineSeparator(), out.toString());
+        }
+    }
+
+    @Test
+    // --stats reports what is not read, written or an option as other, and a batch takes neither --stats nor --follow
+    public void moditextTest116() throws IOException {
+        String sep = System.lineSeparator();
+        Path inputFile = createFile("abc" + sep);
+        Stats stats = new Stats();
+        ModiText.compile(Arrays.asList("-k", "a")).process(inputFile, new ByteArrayOutputStream(), stats);
+        Assertions.assertTrue(stats.otherNanos() <= stats.totalNanos());
+        Assertions.assertTrue(stats.toJson().contains("\"otherNanos\":"));
+        Assertions.assertTrue(stats.toString().contains(", other "));
+        Assertions.assertFalse(stats.toString().contains("split"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        for (String option : new String[] {"--stats", "--follow"}) {
+            err.reset();
+            String[] args = {"-k", "a", option, "--", inputFile.toString()};
+            Assertions.assertFalse(Batch.run(Arrays.asList(args), new PrintStream(out), new PrintStream(err)));
+            Assertions.assertTrue(err.toString().contains("not batch options"));
+        }
+        Assertions.assertEquals("", out.toString());
+    }
 }